@@ -0,0 +1,31 @@
+package Facility;
+
+import java.util.Locale;
+
+/**
+ * Class a facility request queues under. Higher classes are admitted first, but a waiting
+ * request ages into the class above it, so lower classes are delayed, never starved; see
+ * Facility. On the wire it is the name in text mode and the ordinal in binary mode.
+ */
+public enum AdmissionPriority {
+    HIGH,
+    NORMAL,
+    LOW;
+
+    private static final AdmissionPriority[] VALUES = values();
+
+    /** By ordinal; NORMAL for codes this side does not know. */
+    public static AdmissionPriority of(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : NORMAL;
+    }
+
+    /** By name, ignoring case; NORMAL for null or unknown names. */
+    public static AdmissionPriority parse(String name) {
+        if (name == null) return NORMAL;
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return NORMAL;
+        }
+    }
+}
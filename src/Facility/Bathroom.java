@@ -1,6 +1,5 @@
 package Facility;
 
-import core.agents.AgentLocation;
 import core.agents.AgentState;
 
 public class Bathroom extends Facility {
@@ -9,28 +8,23 @@ public class Bathroom extends Facility {
     }
 
     @Override
-    protected void onEnter(String agentId, ClientChannel channel) throws InterruptedException {
+    protected long onEnter(String agentId, ClientChannel channel) {
         channel.sendState(agentId, AgentState.ON_BREAK);
         System.out.println("[" + agentId + "] Moving to the bathroom");
-        Thread.sleep(1000);
+        return 1000;
     }
 
     @Override
-    protected void onUse(String agentId, ClientChannel channel) throws InterruptedException {
+    protected long onUse(String agentId, ClientChannel channel) {
         System.out.println("[" + agentId + "] Taking a break...");
-        Thread.sleep(5000);
-        System.out.println("[" + agentId + "] Finished taking a break");
+        return 5000;
     }
 
     @Override
-    protected void onExit(String agentId, ClientChannel channel) throws InterruptedException {
+    protected long onExit(String agentId, ClientChannel channel) {
         // channel.sendState(agentId, AgentState.MOVING);
+        System.out.println("[" + agentId + "] Finished taking a break");
         System.out.println("[" + agentId + "] Moving towards exit...");
-        Thread.sleep(1000);
-        System.out.println("[" + agentId + "] Moving towards " + AgentLocation.FACTORY);
-        channel.sendState(agentId, AgentState.IDLE);
-        channel.sendLocation(agentId, AgentLocation.FACTORY);
-        
-        channel.sendEvent(agentId, "BREAK_COMPLETE");
+        return 1000;
     }
-}
\ No newline at end of file
+}
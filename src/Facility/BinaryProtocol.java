@@ -0,0 +1,132 @@
+package Facility;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+
+/**
+ * Length-prefixed binary framing for the facility protocol. A client opts in by sending
+ * "HELLO &lt;clientId&gt; BINARY"; a server that supports it answers
+ * "EVENT &lt;clientId&gt; HELLO_OK BINARY" and every byte after that line is frames.
+ *
+ * Frame: [u16 length of the rest][u8 type][payload]. Agents and facilities are numbered by the
+ * client with BIND and OPEN frames once per connection; afterwards every message carries the
+ * numbers, and states, locations and known events travel as one-byte ordinals or codes.
+ */
+public final class BinaryProtocol {
+    public static final String HELLO_TOKEN = "BINARY";
+
+    // client -> server
+    public static final byte BIND = 1;        // i32 agent, u16 name length, name bytes
+    public static final byte REQUEST = 2;     // i32 agent, u16 facility, i64 request ID (0 = none), u8 AdmissionPriority (optional)
+    public static final byte QUIT = 3;        // empty
+    public static final byte OPEN = 4;        // u16 facility, u16 name length, name bytes
+
+    // server -> client
+    public static final byte STATE = 10;      // i32 agent, u8 AgentState ordinal
+    public static final byte LOCATION = 11;   // i32 agent, u8 AgentLocation ordinal
+    public static final byte EVENT = 12;      // i32 agent, u8 event code
+    public static final byte EVENT_TEXT = 13; // i32 agent, u16 length, UTF-8 event name
+
+    /** Size of the length prefix in front of every frame. */
+    public static final int LENGTH_BYTES = 2;
+    /** Longest frame after the length prefix; readers size their buffers from it. */
+    public static final int MAX_FRAME = 4096;
+    /** Highest agent number a BIND may carry; servers index agents by it, like u16 facilities. */
+    public static final int MAX_AGENT = 0xFFFF;
+
+    private static final AgentState[] STATES = AgentState.values();
+    private static final AgentLocation[] LOCATIONS = AgentLocation.values();
+    private static final String[] EVENTS = {"HELLO_OK", "BREAK_COMPLETE", "BYE", "INTERRUPTED"};
+
+    private BinaryProtocol() {
+    }
+
+    public static AgentState state(int ordinal) {
+        return STATES[ordinal];
+    }
+
+    public static AgentLocation location(int ordinal) {
+        return LOCATIONS[ordinal];
+    }
+
+    /** Event name for a code, or null if the code is unknown. */
+    public static String event(int code) {
+        return code >= 0 && code < EVENTS.length ? EVENTS[code] : null;
+    }
+
+    /** Code for a known event name, or -1 if it has to be sent as EVENT_TEXT. */
+    public static int eventCode(String event) {
+        for (int i = 0; i < EVENTS.length; i++) {
+            if (EVENTS[i].equals(event)) return i;
+        }
+        return -1;
+    }
+
+    public static ByteBuffer encodeBind(int agent, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 4 + 2 + bytes.length);
+        frame.putShort((short) (1 + 4 + 2 + bytes.length)).put(BIND).putInt(agent)
+                .putShort((short) bytes.length).put(bytes);
+        frame.flip();
+        return frame;
+    }
+
+    public static ByteBuffer encodeOpen(int facility, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 2 + 2 + bytes.length);
+        frame.putShort((short) (1 + 2 + 2 + bytes.length)).put(OPEN).putShort((short) facility)
+                .putShort((short) bytes.length).put(bytes);
+        frame.flip();
+        return frame;
+    }
+
+    public static ByteBuffer encodeRequest(int agent, int facility, long requestId) {
+        return encodeRequest(agent, facility, requestId, AdmissionPriority.NORMAL);
+    }
+
+    public static ByteBuffer encodeRequest(int agent, int facility, long requestId, AdmissionPriority priority) {
+        ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 4 + 2 + 8 + 1);
+        frame.putShort((short) 16).put(REQUEST).putInt(agent).putShort((short) facility).putLong(requestId)
+                .put((byte) priority.ordinal());
+        frame.flip();
+        return frame;
+    }
+
+    public static ByteBuffer encodeQuit() {
+        ByteBuffer frame = ByteBuffer.allocate(3);
+        frame.putShort((short) 1).put(QUIT);
+        frame.flip();
+        return frame;
+    }
+
+    public static ByteBuffer encodeState(int agent, AgentState state) {
+        return encodeByte(STATE, agent, state.ordinal());
+    }
+
+    public static ByteBuffer encodeLocation(int agent, AgentLocation location) {
+        return encodeByte(LOCATION, agent, location.ordinal());
+    }
+
+    public static ByteBuffer encodeEvent(int agent, String event) {
+        int code = eventCode(event);
+        if (code >= 0) {
+            return encodeByte(EVENT, agent, code);
+        }
+        byte[] bytes = event.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 4 + 2 + bytes.length);
+        frame.putShort((short) (1 + 4 + 2 + bytes.length)).put(EVENT_TEXT).putInt(agent)
+                .putShort((short) bytes.length).put(bytes);
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer encodeByte(byte type, int agent, int value) {
+        ByteBuffer frame = ByteBuffer.allocate(2 + 1 + 4 + 1);
+        frame.putShort((short) 6).put(type).putInt(agent).put((byte) value);
+        frame.flip();
+        return frame;
+    }
+}
@@ -1,6 +1,5 @@
 package Facility;
 
-import core.agents.AgentLocation;
 import core.agents.AgentState;
 
 public class BreakRoom extends Facility {
@@ -9,29 +8,24 @@ public class BreakRoom extends Facility {
     }
 
     @Override
-    protected void onEnter(String agentId, ClientChannel channel) throws InterruptedException {
+    protected long onEnter(String agentId, ClientChannel channel) {
         // channel.sendLocation(agentId, AgentLocation.BREAKROOM);
         channel.sendState(agentId, AgentState.ON_BREAK);
         System.out.println("[" + agentId + "] Moving to the breakroom");
-        Thread.sleep(1000);
+        return 1000;
     }
 
     @Override
-    protected void onUse(String agentId, ClientChannel channel) throws InterruptedException {
+    protected long onUse(String agentId, ClientChannel channel) {
         System.out.println("[" + agentId + "] Taking a break...");
         // channel.sendState(agentId, AgentState.ON_BREAK);
-        Thread.sleep(10000);
-        System.out.println("[" + agentId + "] Finished taking a break");
+        return 10000;
     }
 
     @Override
-    protected void onExit(String agentId, ClientChannel channel) throws InterruptedException {
+    protected long onExit(String agentId, ClientChannel channel) {
+        System.out.println("[" + agentId + "] Finished taking a break");
         System.out.println("[" + agentId + "] Moving towards exit...");
-        Thread.sleep(1000);
-        System.out.println("[" + agentId + "] Moving towards " + AgentLocation.FACTORY);
-        channel.sendState(agentId, AgentState.IDLE);
-        channel.sendLocation(agentId, AgentLocation.FACTORY);
-
-        channel.sendEvent(agentId, "BREAK_COMPLETE");
+        return 1000;
     }
 }
@@ -3,6 +3,10 @@ package Facility;
 import core.agents.AgentLocation;
 import core.agents.AgentState;
 
+/**
+ * Where a Facility sends a visit's replies. Called on the selector and timer wheel threads, so
+ * implementations must not block: queue the message and deliver it elsewhere.
+ */
 public interface ClientChannel {
     void sendState(String agentId, AgentState state);
 
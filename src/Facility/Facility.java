@@ -1,41 +1,341 @@
 package Facility;
 
-import java.util.concurrent.Semaphore;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.concurrent.locks.ReentrantLock;
 
+import core.agents.AgentLocation;
 import core.agents.AgentState;
+import core.metrics.LatencyHistogram;
 
+/**
+ * Capacity-limited facility driven by an admission queue and a shared timer wheel. A queued or
+ * occupying agent is just a Visit object and at most one pending timer; no thread is parked.
+ * Subclasses describe each phase of a visit and return how long that phase lasts. Statistics
+ * are kept in lock-free counters and gauges, so reading them never contends with admission.
+ *
+ * Requests may carry a client-chosen request ID so a client that lost its connection can resend
+ * them: a repeat of a visit still in progress only moves its replies to the new channel and
+ * replays where it stands, and a repeat of a recently finished one replays the way out. Either
+ * way no second slot is taken.
+ *
+ * Each request carries an AdmissionPriority. The queue is FIFO within a class; across classes
+ * the next slot goes to the request with the earliest arrival time after moving each class back
+ * by agingMillis per class above it. A HIGH request therefore overtakes a NORMAL one that came
+ * less than agingMillis before it, but not one that came earlier than that; a request can only
+ * be overtaken by ones arriving within a fixed window after it, so nobody starves. Wait times
+ * are also kept per class.
+ */
 public abstract class Facility {
+    public static final long NO_REQUEST_ID = 0;
+    private static final int COMPLETED_REQUESTS_KEPT = 10_000;
+    private static final long DEFAULT_AGING_MILLIS = Long.getLong("facility.aging.ms", 5000);
+    private static final AdmissionPriority[] PRIORITIES = AdmissionPriority.values();
+
+    private static final TimerWheel TIMER = new TimerWheel(10, TimeUnit.MILLISECONDS, 1024, "FacilityTimer");
+
     protected final int capacity;
-    protected final Semaphore semaphore;
+    private final long agingNanos;
+    private final ReentrantLock lock;
+    // One FIFO per AdmissionPriority, by ordinal
+    private final ArrayDeque<Visit>[] queues;
+    private int queued;
+    private int occupied;
+    private final Map<String, Visit> activeRequests;
+    private final LinkedHashMap<String, Boolean> completedRequests;
+
+    // Written under the lock, read without it
+    private volatile int occupiedGauge;
+    private volatile int queuedGauge;
+    private final LongAdder requests;
+    private final LongAdder served;
+    private final LongAdder duplicates;
+    private final LatencyHistogram waitTimes;
+    private final LatencyHistogram[] classWaitTimes;
+    private final LatencyHistogram useTimes;
 
     public Facility(int capacity) {
+        this(capacity, DEFAULT_AGING_MILLIS);
+    }
+
+    /** agingMillis is how much waiting is worth one priority class (facility.aging.ms, 5 s by default). */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected Facility(int capacity, long agingMillis) {
         this.capacity = capacity;
-        this.semaphore = new Semaphore(capacity, true);
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+        this.lock = new ReentrantLock();
+        this.queues = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        this.queued = 0;
+        this.occupied = 0;
+        this.activeRequests = new HashMap<>();
+        this.completedRequests = new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > COMPLETED_REQUESTS_KEPT;
+            }
+        };
+        this.requests = new LongAdder();
+        this.served = new LongAdder();
+        this.duplicates = new LongAdder();
+        this.waitTimes = new LatencyHistogram();
+        this.classWaitTimes = new LatencyHistogram[PRIORITIES.length];
+        for (int i = 0; i < classWaitTimes.length; i++) {
+            classWaitTimes[i] = new LatencyHistogram();
+        }
+        this.useTimes = new LatencyHistogram();
     }
 
     public void handleAccessRequest(String agentId, ClientChannel channel) {
-        new Thread(() -> {
+        handleAccessRequest(agentId, channel, NO_REQUEST_ID, AdmissionPriority.NORMAL);
+    }
+
+    public void handleAccessRequest(String agentId, ClientChannel channel, long requestId) {
+        handleAccessRequest(agentId, channel, requestId, AdmissionPriority.NORMAL);
+    }
+
+    public void handleAccessRequest(String agentId, ClientChannel channel, long requestId, AdmissionPriority priority) {
+        String requestKey = requestId == NO_REQUEST_ID ? null : agentId + "#" + requestId;
+        if (requestKey != null && replayDuplicate(requestKey, agentId, channel)) {
+            return;
+        }
+
+        requests.increment();
+        channel.sendState(agentId, AgentState.WAITING);
+
+        Visit admitted = null;
+        try {
+            lock.lock();
+            Visit visit = new Visit(agentId, channel, requestKey, priority);
+            if (requestKey != null) {
+                activeRequests.put(requestKey, visit);
+            }
+            // Only take a free slot directly if nobody is queued ahead, whatever their class
+            if (occupied < capacity && queued == 0) {
+                occupied++;
+                visit.admitted = true;
+                admitted = visit;
+            } else {
+                queues[priority.ordinal()].add(visit);
+                queued++;
+            }
+            updateGauges();
+        } finally {
+            lock.unlock();
+        }
+
+        if (admitted != null) {
+            enter(admitted);
+        }
+    }
+
+    /**
+     * Handles a resent request. The replay is queued under the lock, so it cannot overtake the
+     * messages the visit itself sends later on the same channel.
+     */
+    private boolean replayDuplicate(String requestKey, String agentId, ClientChannel channel) {
+        boolean finished;
+        try {
+            lock.lock();
+            Visit visit = activeRequests.get(requestKey);
+            finished = visit == null && completedRequests.containsKey(requestKey);
+            if (visit == null && !finished) {
+                return false;
+            }
+            duplicates.increment();
+            if (visit != null) {
+                visit.channel = channel;
+                channel.sendState(agentId, visit.admitted ? AgentState.ON_BREAK : AgentState.WAITING);
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("[" + agentId + "] Repeated request for a finished visit");
+        onLeave(agentId, channel);
+        return true;
+    }
+
+    private void enter(Visit visit) {
+        visit.admittedAt = System.nanoTime();
+        waitTimes.record(visit.admittedAt - visit.requestedAt);
+        classWaitTimes[visit.priority.ordinal()].record(visit.admittedAt - visit.requestedAt);
+        phase(visit, "onEnter", () -> onEnter(visit.agentId, visit.channel), () -> use(visit));
+    }
+
+    private void use(Visit visit) {
+        phase(visit, "onUse", () -> onUse(visit.agentId, visit.channel), () -> exit(visit));
+    }
+
+    private void exit(Visit visit) {
+        phase(visit, "onExit", () -> onExit(visit.agentId, visit.channel), () -> leave(visit));
+    }
+
+    // A hook that throws ends the visit early rather than losing it with its slot and request entry
+    private void phase(Visit visit, String name, LongSupplier hook, Runnable next) {
+        long millis;
+        try {
+            millis = hook.getAsLong();
+        } catch (RuntimeException e) {
+            System.out.println("[" + visit.agentId + "] " + getClass().getSimpleName() + "." + name + " failed: " + e);
+            leave(visit);
+            return;
+        }
+        after(millis, next);
+    }
+
+    // Zero-length phases run straight through instead of waiting for the next tick
+    private static void after(long millis, Runnable next) {
+        if (millis <= 0) {
+            next.run();
+        } else {
+            TIMER.schedule(next, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void leave(Visit visit) {
+        useTimes.record(System.nanoTime() - visit.admittedAt);
+        served.increment();
+        if (visit.requestKey != null) {
             try {
-                channel.sendState(agentId, AgentState.WAITING);
-
-                semaphore.acquire();
-                try {
-                    onEnter(agentId, channel);
-                    onUse(agentId, channel);
-                } finally {
-                    onExit(agentId, channel);
-                    semaphore.release();
+                lock.lock();
+                activeRequests.remove(visit.requestKey);
+                completedRequests.put(visit.requestKey, Boolean.TRUE);
+            } finally {
+                lock.unlock();
+            }
+        }
+        try {
+            onLeave(visit.agentId, visit.channel);
+        } finally {
+            Visit next;
+            try {
+                lock.lock();
+                next = pollNext();
+                if (next == null) {
+                    occupied--;
+                } else {
+                    next.admitted = true;
                 }
-            } catch (InterruptedException e) {
-                channel.sendEvent(agentId, "INTERRUPTED");
-                Thread.currentThread().interrupt();
+                updateGauges();
+            } finally {
+                lock.unlock();
+            }
+            // The slot passes straight to the next agent in line
+            if (next != null) {
+                enter(next);
+            }
+        }
+    }
+
+    // Caller holds the lock. Each queue is in arrival order, so only the heads need comparing.
+    private Visit pollNext() {
+        int best = -1;
+        long bestArrival = 0;
+        for (int i = 0; i < queues.length; i++) {
+            Visit head = queues[i].peek();
+            if (head == null) continue;
+            long agedArrival = head.requestedAt + i * agingNanos;
+            if (best < 0 || agedArrival - bestArrival < 0) {
+                best = i;
+                bestArrival = agedArrival;
             }
-        }, "BathroomRequest-" + agentId).start();
+        }
+        if (best < 0) return null;
+        queued--;
+        return queues[best].poll();
+    }
+
+    // Caller holds the lock
+    private void updateGauges() {
+        occupiedGauge = occupied;
+        queuedGauge = queued;
+    }
+
+    public int getOccupancy() {
+        return occupiedGauge;
+    }
+
+    public int getQueueLength() {
+        return queuedGauge;
+    }
+
+    public long getRequests() {
+        return requests.sum();
     }
 
-    protected abstract void onEnter(String agentId, ClientChannel channel) throws InterruptedException;
+    public long getServed() {
+        return served.sum();
+    }
 
-    protected abstract void onUse(String agentId, ClientChannel channel) throws InterruptedException;
+    /** Resent requests answered without taking a slot. */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
 
-    protected abstract void onExit(String agentId, ClientChannel channel) throws InterruptedException;
+    /** Request to admission. */
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /** Request to admission, for requests of one class only. */
+    public LatencyHistogram getWaitTimes(AdmissionPriority priority) {
+        return classWaitTimes[priority.ordinal()];
+    }
+
+    /** Admission to leaving, i.e. how long a slot was held. */
+    public LatencyHistogram getUseTimes() {
+        return useTimes;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Agent admitted; returns how long (ms) it takes to walk in. */
+    protected abstract long onEnter(String agentId, ClientChannel channel);
+
+    /** Agent inside; returns how long (ms) it uses the facility. */
+    protected abstract long onUse(String agentId, ClientChannel channel);
+
+    /** Agent done; returns how long (ms) it takes to walk out while still holding the slot. */
+    protected abstract long onExit(String agentId, ClientChannel channel);
+
+    /**
+     * Agent gone, just before the slot is handed on. Sends it back to the factory floor. Also
+     * runs, skipping the later phases, when onEnter, onUse or onExit throws.
+     */
+    protected void onLeave(String agentId, ClientChannel channel) {
+        System.out.println("[" + agentId + "] Moving towards " + AgentLocation.FACTORY);
+        channel.sendState(agentId, AgentState.IDLE);
+        channel.sendLocation(agentId, AgentLocation.FACTORY);
+
+        channel.sendEvent(agentId, "BREAK_COMPLETE");
+    }
+
+    private static class Visit {
+        private final String agentId;
+        private final String requestKey;
+        private final long requestedAt;
+        private final AdmissionPriority priority;
+        // Moved to a client's new connection when it resends the request
+        private volatile ClientChannel channel;
+        private boolean admitted;
+        private long admittedAt;
+
+        Visit(String agentId, ClientChannel channel, String requestKey, AdmissionPriority priority) {
+            this.agentId = agentId;
+            this.channel = channel;
+            this.requestKey = requestKey;
+            this.priority = priority;
+            this.requestedAt = System.nanoTime();
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package Facility;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The facilities a FacilityServer hosts, by name. A client reaches a facility with
+ * REQUEST_&lt;NAME&gt;, so names are upper-cased and may not contain whitespace. Facilities can be
+ * added or removed while the server is running.
+ */
+public class FacilityRegistry {
+    private final Map<String, Facility> facilities;
+
+    public FacilityRegistry() {
+        this.facilities = new ConcurrentHashMap<>();
+    }
+
+    public static String normalize(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT);
+        if (normalized.isEmpty() || !normalized.matches("\\S+")) {
+            throw new IllegalArgumentException("Invalid facility name: '" + name + "'");
+        }
+        return normalized;
+    }
+
+    public FacilityRegistry register(String name, Facility facility) {
+        String key = normalize(name);
+        if (facilities.putIfAbsent(key, facility) != null) {
+            throw new IllegalArgumentException("Facility already registered: " + key);
+        }
+        return this;
+    }
+
+    public Facility unregister(String name) {
+        return facilities.remove(normalize(name));
+    }
+
+    /** The facility registered under name, or null. */
+    public Facility get(String name) {
+        return facilities.get(name.toUpperCase(Locale.ROOT));
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(new TreeSet<>(facilities.keySet()));
+    }
+
+    public int size() {
+        return facilities.size();
+    }
+
+    /** Instantiates a Facility from its class name through the public no-argument constructor. */
+    public static Facility create(String className) {
+        try {
+            Class<?> type = Class.forName(className.contains(".") ? className : "Facility." + className);
+            return (Facility) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Cannot create facility " + className + ": " + e, e);
+        }
+    }
+}
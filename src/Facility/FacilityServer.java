@@ -1,22 +1,405 @@
 package Facility;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
-public abstract class FacilityServer {
-    protected final Facility facility;
-    protected final FacilityType facilityType;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import core.metrics.LatencyHistogram;
+
+/**
+ * Serves the facility protocol for every Facility in a FacilityRegistry from a single selector
+ * thread on one port: HELLO &lt;clientId&gt;, REQUEST_&lt;NAME&gt; [agentId] and QUIT in; STATE,
+ * LOCATION and EVENT lines out. A request without an agent ID is made on behalf of the HELLO
+ * client, so one connection can carry a single agent or multiplex a whole factory's workers.
+ * REQUEST_&lt;NAME&gt; agentId requestId makes the request safe to resend after a reconnect, and
+ * an AdmissionPriority name after that (HIGH, NORMAL, LOW) sets its class in the queue.
+ * "HELLO &lt;clientId&gt; BINARY" switches the rest of the connection to BinaryProtocol frames.
+ * STATS answers with one "STATS ..." line per facility, see {@link #statsReport()}.
+ *
+ * Usage: java [-Dfacility.stats.port=N] Facility.FacilityServer [port] [NAME=FacilityClass ...]
+ * (default: port 5000 with BATHROOM=Bathroom and BREAKROOM=BreakRoom)
+ *
+ * {@link #startEmbedded} runs one inside another process instead, on a loopback port.
+ */
+public class FacilityServer implements SelectorServer.Handler {
+    private static final String REQUEST_PREFIX = "REQUEST_";
+    private static final long EMBEDDED_READY_TIMEOUT_SECONDS = 10;
+
+    protected final FacilityRegistry registry;
     protected final int port;
 
-    public FacilityServer(FacilityType facilityType, int port) {
+    private final AtomicInteger activeConnections;
+    private final LongAdder acceptedConnections;
+    private volatile SelectorServer server;
+    private StatsEndpoint statsEndpoint;
+
+    public FacilityServer(int port, FacilityRegistry registry) {
         this.port = port;
-        this.facilityType = facilityType;
-        
-        if (facilityType == FacilityType.BATHROOM) {
-            facility = new Bathroom();
+        this.registry = registry;
+        this.activeConnections = new AtomicInteger();
+        this.acceptedConnections = new LongAdder();
+    }
+
+    /** A server hosting a single facility under its type's name. */
+    public FacilityServer(FacilityType facilityType, int port, Facility facility) {
+        this(port, new FacilityRegistry().register(facilityType.name(), facility));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        FacilityRegistry registry = new FacilityRegistry();
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                String[] entry = args[i].split("=", 2);
+                if (entry.length != 2) {
+                    throw new IllegalArgumentException("Expected NAME=FacilityClass, got " + args[i]);
+                }
+                registry.register(entry[0], FacilityRegistry.create(entry[1]));
+            }
         } else {
-            facility = new BreakRoom();
+            registry.register(FacilityType.BATHROOM.name(), new Bathroom());
+            registry.register(FacilityType.BREAKROOM.name(), new BreakRoom());
+        }
+        new FacilityServer(port, registry).start();
+    }
+
+    public void start() throws IOException {
+        System.out.println("Facility server " + registry.names() + " listening on port " + port);
+        serve(new SelectorServer(port, this));
+    }
+
+    /**
+     * Starts a server for registry on a daemon thread, bound to loopback, and returns once it is
+     * accepting connections. Port 0 picks a free port; ask getLocalPort() which one.
+     */
+    public static FacilityServer startEmbedded(int port, FacilityRegistry registry) throws IOException {
+        FacilityServer facilityServer = new FacilityServer(port, registry);
+        SelectorServer selectorServer = new SelectorServer(InetAddress.getLoopbackAddress(), port, facilityServer);
+        Thread thread = new Thread(() -> {
+            try {
+                facilityServer.serve(selectorServer);
+            } catch (IOException e) {
+                // awaitBound reports bind failures to the caller
+                System.err.println("Embedded facility server stopped: " + e.getMessage());
+            }
+        }, "EmbeddedFacilityServer");
+        thread.setDaemon(true);
+        thread.start();
+        selectorServer.awaitBound(EMBEDDED_READY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        System.out.println("Embedded facility server " + registry.names() + " listening on "
+                + InetAddress.getLoopbackAddress().getHostAddress() + ":" + selectorServer.getLocalPort());
+        return facilityServer;
+    }
+
+    private void serve(SelectorServer selectorServer) throws IOException {
+        server = selectorServer;
+        Integer statsPort = Integer.getInteger("facility.stats.port");
+        if (statsPort != null) {
+            startStatsEndpoint(statsPort);
+        }
+        selectorServer.run();
+    }
+
+    /** The port the server is listening on, which for port 0 is only known once it has started. */
+    public int getLocalPort() {
+        SelectorServer current = server;
+        return current != null && current.getLocalPort() != 0 ? current.getLocalPort() : port;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop();
+        }
+        if (statsEndpoint != null) {
+            statsEndpoint.stop();
         }
     }
 
-    public abstract void start() throws IOException;
+    /** Serves statsReport() as plain text on http://127.0.0.1:port/stats. */
+    public synchronized void startStatsEndpoint(int port) throws IOException {
+        if (statsEndpoint == null) {
+            statsEndpoint = new StatsEndpoint(port, this::statsReport);
+            System.out.println("Facility stats on http://127.0.0.1:" + statsEndpoint.getPort() + "/stats");
+        }
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /** Lines and frames sent to clients so far. */
+    public long getMessagesSent() {
+        SelectorServer current = server;
+        return current != null ? current.getMessagesSent() : 0;
+    }
+
+    /** Socket writes made so far; below getMessagesSent() when output is coalesced. */
+    public long getWriteCalls() {
+        SelectorServer current = server;
+        return current != null ? current.getWriteCalls() : 0;
+    }
+
+    /**
+     * One "STATS server ..." line, one "STATS &lt;NAME&gt; ..." line per facility and "STATS END",
+     * all space-separated key=value pairs; times are milliseconds. Reads counters only, so it
+     * can be called from any thread at any rate.
+     */
+    public List<String> statsReport() {
+        List<String> lines = new ArrayList<>();
+        lines.add("STATS server port=" + getLocalPort() + " connections=" + activeConnections.get()
+                + " accepted=" + acceptedConnections.sum() + " facilities=" + registry.size()
+                + " messages_out=" + getMessagesSent() + " writes=" + getWriteCalls());
+        for (String name : registry.names()) {
+            Facility facility = registry.get(name);
+            if (facility == null) continue;
+            lines.add("STATS " + name
+                    + " capacity=" + facility.getCapacity()
+                    + " occupancy=" + facility.getOccupancy()
+                    + " queued=" + facility.getQueueLength()
+                    + " requests=" + facility.getRequests()
+                    + " served=" + facility.getServed()
+                    + " duplicates=" + facility.getDuplicates()
+                    + histogram(" wait", facility.getWaitTimes())
+                    + classHistograms(facility)
+                    + histogram(" use", facility.getUseTimes()));
+        }
+        lines.add("STATS END");
+        return lines;
+    }
+
+    // wait_high_n=..., wait_normal_n=..., and so on for every class that has been admitted
+    private static String classHistograms(Facility facility) {
+        StringBuilder fields = new StringBuilder();
+        for (AdmissionPriority priority : AdmissionPriority.values()) {
+            LatencyHistogram histogram = facility.getWaitTimes(priority);
+            if (histogram.getCount() > 0) {
+                fields.append(histogram(" wait_" + priority.name().toLowerCase(Locale.ROOT), histogram));
+            }
+        }
+        return fields.toString();
+    }
+
+    private static String histogram(String prefix, LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "%s_n=%d%s_mean_ms=%.1f%s_p50_ms=%.1f%s_p90_ms=%.1f%s_p99_ms=%.1f%s_max_ms=%.1f",
+                prefix, histogram.getCount(),
+                prefix, histogram.getMeanNanos() / 1e6,
+                prefix, histogram.getPercentileNanos(50) / 1e6,
+                prefix, histogram.getPercentileNanos(90) / 1e6,
+                prefix, histogram.getPercentileNanos(99) / 1e6,
+                prefix, histogram.getMaxNanos() / 1e6);
+    }
+
+    public FacilityRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public void onConnect(SelectorServer.Connection connection) {
+        System.out.println("Client connected: " + connection);
+        activeConnections.incrementAndGet();
+        acceptedConnections.increment();
+        connection.setAttachment(new Session(connection));
+    }
+
+    @Override
+    public void onDisconnect(SelectorServer.Connection connection) {
+        activeConnections.decrementAndGet();
+        System.out.println("Client disconnected: " + ((Session) connection.getAttachment()).agentId);
+    }
+
+    @Override
+    public void onLine(SelectorServer.Connection connection, String line) {
+        if (line.isEmpty())
+            return;
+        Session session = (Session) connection.getAttachment();
+        String[] parts = line.split("\\s+");
+        String cmd = parts[0];
+
+        if (cmd.startsWith(REQUEST_PREFIX)) {
+            String agentId = parts.length >= 2 ? parts[1] : session.agentId;
+            long requestId = parts.length >= 3 ? parseRequestId(parts[2]) : Facility.NO_REQUEST_ID;
+            AdmissionPriority priority = AdmissionPriority.parse(parts.length >= 4 ? parts[3] : null);
+            Facility facility = registry.get(cmd.substring(REQUEST_PREFIX.length()));
+            if (facility != null) {
+                facility.handleAccessRequest(agentId, session, requestId, priority);
+            } else {
+                session.sendEvent(agentId, "UNKNOWN_FACILITY:" + cmd.substring(REQUEST_PREFIX.length()));
+            }
+            return;
+        }
+
+        switch (cmd) {
+            case "HELLO":
+                if (parts.length >= 2) {
+                    session.agentId = parts[1];
+                    if (parts.length >= 3 && parts[2].equals(BinaryProtocol.HELLO_TOKEN)) {
+                        // The reply is still a text line; the client reads frames after it
+                        session.sendEvent(session.agentId, "HELLO_OK " + BinaryProtocol.HELLO_TOKEN);
+                        session.binary = true;
+                        connection.setBinary(true);
+                    } else {
+                        session.sendEvent(session.agentId, "HELLO_OK");
+                    }
+                }
+                break;
+            case "STATS":
+                for (String stats : statsReport()) {
+                    connection.sendLine(stats);
+                }
+                break;
+            case "QUIT":
+                System.out.println("QUITTING CONNECTION");
+                session.sendEvent(session.agentId, "BYE");
+                connection.closeAfterFlush();
+                break;
+
+            default:
+                session.sendEvent(session.agentId, "UNKNOWN_COMMAND:" + cmd);
+        }
+    }
+
+    private static long parseRequestId(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return Facility.NO_REQUEST_ID;
+        }
+    }
+
+    @Override
+    public void onFrame(SelectorServer.Connection connection, byte type, ByteBuffer payload) {
+        Session session = (Session) connection.getAttachment();
+        switch (type) {
+            case BinaryProtocol.REQUEST: {
+                String agentId = session.name(payload.getInt());
+                String facilityName = session.facility(payload.getShort() & 0xFFFF);
+                long requestId = payload.getLong();
+                // Older clients send no priority byte
+                AdmissionPriority priority = payload.hasRemaining() ? AdmissionPriority.of(payload.get() & 0xFF) : AdmissionPriority.NORMAL;
+                Facility facility = facilityName != null ? registry.get(facilityName) : null;
+                if (agentId == null) {
+                    break;
+                }
+                if (facility != null) {
+                    facility.handleAccessRequest(agentId, session, requestId, priority);
+                } else {
+                    session.sendEvent(agentId, "UNKNOWN_FACILITY");
+                }
+                break;
+            }
+            case BinaryProtocol.OPEN: {
+                int id = payload.getShort() & 0xFFFF;
+                byte[] name = new byte[payload.getShort() & 0xFFFF];
+                payload.get(name);
+                session.open(id, FacilityRegistry.normalize(new String(name, StandardCharsets.UTF_8)));
+                break;
+            }
+            case BinaryProtocol.BIND: {
+                int id = payload.getInt();
+                byte[] name = new byte[payload.getShort() & 0xFFFF];
+                payload.get(name);
+                session.bind(id, new String(name, StandardCharsets.UTF_8));
+                break;
+            }
+            case BinaryProtocol.QUIT:
+                System.out.println("QUITTING CONNECTION");
+                session.sendEvent(session.agentId, "BYE");
+                connection.closeAfterFlush();
+                break;
+
+            default:
+                System.out.println("Unknown frame type " + type + " from " + connection);
+        }
+    }
+
+    private static class Session implements ClientChannel {
+        private final SelectorServer.Connection connection;
+        private String agentId = "UNKNOWN";
+
+        // Binary mode only: agent numbers bound by the client, both ways
+        private volatile boolean binary;
+        private String[] names = new String[0];
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private String[] facilities = new String[0];
+
+        Session(SelectorServer.Connection connection) {
+            this.connection = connection;
+        }
+
+        // Selector thread only; an out-of-range number drops the connection as a bad frame
+        void bind(int id, String name) {
+            if (id < 0 || id > BinaryProtocol.MAX_AGENT) {
+                throw new IllegalArgumentException("agent number " + id + " outside 0.." + BinaryProtocol.MAX_AGENT);
+            }
+            if (id >= names.length) {
+                names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+            }
+            names[id] = name;
+            ids.put(name, id);
+        }
+
+        String name(int id) {
+            return id >= 0 && id < names.length ? names[id] : null;
+        }
+
+        // Selector thread only; looked up per request so unregistering takes effect at once
+        void open(int id, String facility) {
+            if (id >= facilities.length) {
+                facilities = Arrays.copyOf(facilities, Math.max(id + 1, facilities.length * 2));
+            }
+            facilities[id] = facility;
+        }
+
+        String facility(int id) {
+            return id < facilities.length ? facilities[id] : null;
+        }
+
+        // -1 for names the client never bound; binary clients only hear about bound agents
+        private int id(String agentId) {
+            Integer id = ids.get(agentId);
+            return id != null ? id : -1;
+        }
+
+        @Override
+        public void sendState(String agentId, AgentState state) {
+            int id = binary ? id(agentId) : -1;
+            if (id >= 0) {
+                connection.send(BinaryProtocol.encodeState(id, state));
+            } else if (!binary) {
+                connection.sendLine("STATE " + agentId + " " + state.name());
+            }
+        }
+
+        @Override
+        public void sendLocation(String agentId, AgentLocation location) {
+            int id = binary ? id(agentId) : -1;
+            if (id >= 0) {
+                connection.send(BinaryProtocol.encodeLocation(id, location));
+            } else if (!binary) {
+                connection.sendLine("LOCATION " + agentId + " " + location.name());
+            }
+        }
+
+        @Override
+        public void sendEvent(String agentId, String eventType) {
+            if (binary) {
+                // Connection-level events such as BYE go to agent -1
+                connection.send(BinaryProtocol.encodeEvent(id(agentId), eventType));
+            } else {
+                connection.sendLine("EVENT " + agentId + " " + eventType);
+            }
+        }
+    }
 }
@@ -0,0 +1,472 @@
+package Facility;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-threaded, newline-delimited text server on a NIO Selector. Every connection has its own
+ * read buffer and outgoing queue; lines can be sent from any thread and are written back by the
+ * selector thread, so idle connections cost no thread at all. A connection can be switched to
+ * length-prefixed frames (see BinaryProtocol), which are handed to the handler in place.
+ *
+ * Output is coalesced: whatever a connection is sent during one selector turn or one timer tick
+ * (see WriteBatch) goes out in one gathering write at the end of it, rather than one write per
+ * message and, with TCP_NODELAY, one packet per message. -Dfacility.coalesce=false turns it off.
+ */
+public class SelectorServer {
+    // Room for the longest frame with its length prefix
+    private static final int READ_BUFFER_SIZE = BinaryProtocol.LENGTH_BYTES + BinaryProtocol.MAX_FRAME;
+    private static final int MAX_GATHER = 256;
+    private static final boolean COALESCE_DEFAULT =
+            Boolean.parseBoolean(System.getProperty("facility.coalesce", "true"));
+
+    public interface Handler {
+        void onConnect(Connection connection);
+
+        void onLine(Connection connection, String line);
+
+        /**
+         * A binary frame; payload is positioned at its first byte and limited to its end. The
+         * buffer is reused, so the handler must not keep it.
+         */
+        default void onFrame(Connection connection, byte type, ByteBuffer payload) {
+        }
+
+        void onDisconnect(Connection connection);
+    }
+
+    private final InetAddress bindAddress;
+    private final int port;
+    private final Handler handler;
+    private final ConcurrentLinkedQueue<Connection> pendingWrites;
+    private final AtomicBoolean wakeupPending;
+    private final boolean coalesce;
+    private final ByteBuffer[] gather;
+    private final LongAdder writeCalls;
+    private final LongAdder messagesSent;
+    private final CountDownLatch bound;
+    private volatile IOException bindFailure;
+    private volatile int localPort;
+    private volatile boolean running;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+
+    public SelectorServer(int port, Handler handler) {
+        this(null, port, handler, COALESCE_DEFAULT);
+    }
+
+    /** bindAddress null listens on every interface; port 0 picks a free one, see getLocalPort(). */
+    public SelectorServer(InetAddress bindAddress, int port, Handler handler, boolean coalesce) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.handler = handler;
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.wakeupPending = new AtomicBoolean(false);
+        this.coalesce = coalesce;
+        this.gather = new ByteBuffer[MAX_GATHER];
+        this.writeCalls = new LongAdder();
+        this.messagesSent = new LongAdder();
+        this.bound = new CountDownLatch(1);
+    }
+
+    public SelectorServer(InetAddress bindAddress, int port, Handler handler) {
+        this(bindAddress, port, handler, COALESCE_DEFAULT);
+    }
+
+    /** Binds the port and runs the event loop on the calling thread until stop() is called. */
+    public void run() throws IOException {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(bindAddress, port), 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            bindFailure = e;
+            bound.countDown();
+            if (serverChannel != null) serverChannel.close();
+            if (selector != null) selector.close();
+            throw e;
+        }
+        localPort = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        selectorThread = Thread.currentThread();
+        running = true;
+        bound.countDown();
+
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                registerPendingWrites();
+
+                // Replies produced while handling this turn's reads are written once, at its end
+                WriteBatch.begin();
+                try {
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) continue;
+
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    }
+                } finally {
+                    WriteBatch.end();
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // stop() closed the selector
+        } finally {
+            closeAll();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /** The port actually bound, once run() has started; differs from getPort() for port 0. */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    /**
+     * Blocks until run() on another thread is accepting connections. Throws the bind failure if
+     * it could not listen, or an IOException if it did not get that far within the timeout.
+     */
+    public void awaitBound(long timeout, TimeUnit unit) throws IOException {
+        try {
+            if (!bound.await(timeout, unit)) {
+                throw new IOException("Server on port " + port + " not ready after " + unit.toMillis(timeout) + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for port " + port);
+        }
+        if (bindFailure != null) {
+            throw new IOException("Cannot listen on port " + port + ": " + bindFailure.getMessage(), bindFailure);
+        }
+    }
+
+    public boolean isCoalescing() {
+        return coalesce;
+    }
+
+    /** Socket write calls made so far; one system call each. */
+    public long getWriteCalls() {
+        return writeCalls.sum();
+    }
+
+    /** Lines and frames queued for writing so far. */
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            handler.onConnect(connection);
+        }
+    }
+
+    private void read(Connection connection) {
+        int n;
+        try {
+            n = connection.channel.read(connection.readBuffer);
+        } catch (IOException e) {
+            System.out.println("Connection error: " + e.getMessage());
+            close(connection);
+            return;
+        }
+        if (n < 0) {
+            close(connection);
+            return;
+        }
+
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        // The handler may switch the connection to binary halfway through the buffer
+        while (connection.open && (connection.binary ? readFrame(connection, buffer) : readLine(connection, buffer))) {
+        }
+        if (!connection.open) return;
+        buffer.compact();
+
+        if (!buffer.hasRemaining()) {
+            System.out.println("Line too long, dropping " + connection);
+            close(connection);
+        }
+    }
+
+    private boolean readLine(Connection connection, ByteBuffer buffer) {
+        int start = buffer.position();
+        for (int i = start; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                String line = new String(buffer.array(), start, i - start, StandardCharsets.UTF_8);
+                buffer.position(i + 1);
+                handler.onLine(connection, line.trim());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean readFrame(Connection connection, ByteBuffer buffer) {
+        if (buffer.remaining() < 2) return false;
+        int start = buffer.position();
+        int length = buffer.getShort(start) & 0xFFFF;
+        if (length == 0 || length > BinaryProtocol.MAX_FRAME) {
+            System.out.println("Bad frame length " + length + ", dropping " + connection);
+            close(connection);
+            return false;
+        }
+        if (buffer.remaining() < 2 + length) return false;
+
+        int end = start + 2 + length;
+        int limit = buffer.limit();
+        byte type = buffer.get(start + 2);
+        buffer.limit(end).position(start + 3);
+        try {
+            handler.onFrame(connection, type, buffer);
+        } catch (RuntimeException e) {
+            // A short or garbled payload must not take the event loop down with it
+            System.out.println("Bad frame from " + connection + ": " + e);
+            close(connection);
+            return false;
+        }
+        buffer.limit(limit).position(end);
+        return true;
+    }
+
+    // Selector thread only
+    private void write(Connection connection) {
+        try {
+            synchronized (connection) {
+                if (!(coalesce ? writeGathered(connection) : writeEach(connection))) {
+                    // Socket buffer full, wait for OP_WRITE
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    connection.writeScheduled = true;
+                    return;
+                }
+                connection.key.interestOps(SelectionKey.OP_READ);
+                connection.writeScheduled = false;
+            }
+            if (connection.closeAfterFlush) {
+                close(connection);
+            }
+        } catch (IOException e) {
+            System.out.println("Connection error: " + e.getMessage());
+            close(connection);
+        }
+    }
+
+    private boolean writeEach(Connection connection) throws IOException {
+        while (!connection.outgoing.isEmpty()) {
+            ByteBuffer head = connection.outgoing.peek();
+            connection.channel.write(head);
+            writeCalls.increment();
+            if (head.hasRemaining()) {
+                return false;
+            }
+            connection.outgoing.poll();
+        }
+        return true;
+    }
+
+    private boolean writeGathered(Connection connection) throws IOException {
+        while (!connection.outgoing.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer buffer : connection.outgoing) {
+                gather[count++] = buffer;
+                if (count == MAX_GATHER) break;
+            }
+            connection.channel.write(gather, 0, count);
+            writeCalls.increment();
+            // Buffers are filled in order, so the last one done means all of them are
+            boolean complete = !gather[count - 1].hasRemaining();
+            Arrays.fill(gather, 0, count, null);
+            while (!connection.outgoing.isEmpty() && !connection.outgoing.peek().hasRemaining()) {
+                connection.outgoing.poll();
+            }
+            if (!complete) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void registerPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            if (connection.key.isValid()) {
+                connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        if (!connection.open) return;
+        connection.open = false;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+        handler.onDisconnect(connection);
+    }
+
+    private void closeAll() {
+        if (selector.isOpen()) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close((Connection) key.attachment());
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer;
+        private final ArrayDeque<ByteBuffer> outgoing;
+        private SelectionKey key;
+        private boolean writeScheduled;
+        private volatile boolean closeAfterFlush;
+        private volatile boolean open;
+        private volatile boolean binary;
+        private Object attachment;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            this.outgoing = new ArrayDeque<>();
+            this.open = true;
+        }
+
+        /** Queues one line for the selector thread to write. Safe to call from any thread. */
+        public void sendLine(String line) {
+            send(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+
+        /** Queues an already encoded frame. Safe to call from any thread. */
+        public void send(ByteBuffer bytes) {
+            if (!open) return;
+            synchronized (this) {
+                outgoing.add(bytes);
+            }
+            messagesSent.increment();
+            if (!coalesce || !WriteBatch.defer(this)) {
+                flush();
+            }
+        }
+
+        /** Closes the connection once everything queued so far has been written. */
+        public void closeAfterFlush() {
+            closeAfterFlush = true;
+            scheduleWrite();
+        }
+
+        // On the selector thread a coalesced flush writes at once; anywhere else it wakes the selector
+        void flush() {
+            if (coalesce && Thread.currentThread() == selectorThread) {
+                if (open && key.isValid()) {
+                    write(this);
+                }
+            } else {
+                scheduleWrite();
+            }
+        }
+
+        private void scheduleWrite() {
+            boolean schedule;
+            synchronized (this) {
+                schedule = !writeScheduled;
+                writeScheduled = true;
+            }
+            if (schedule) {
+                pendingWrites.add(this);
+                if (wakeupPending.compareAndSet(false, true)) {
+                    selector.wakeup();
+                }
+            }
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        /** Everything read after the current line is treated as frames. Selector thread only. */
+        public void setBinary(boolean binary) {
+            this.binary = binary;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        public Object getAttachment() {
+            return attachment;
+        }
+
+        public void setAttachment(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return "Connection" + channel.getRemoteAddress();
+            } catch (IOException e) {
+                return "Connection[closed]";
+            }
+        }
+    }
+}
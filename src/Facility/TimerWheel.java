@@ -0,0 +1,112 @@
+package Facility;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel: one thread advances a ring of buckets every tick and runs the tasks that
+ * fall due. Scheduling is a lock-free enqueue and a pending timer is a single small object, so
+ * thousands of timers cost kilobytes. Tasks run on the wheel thread and must not block: a
+ * task that waits delays every timer behind it. Facility tasks only reach agents through
+ * ClientChannel, whose implementations queue the message rather than deliver it in place.
+ */
+public class TimerWheel {
+    private final long tickNanos;
+    private final List<Timeout>[] buckets;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> pending;
+    private final Thread worker;
+    private final long startTime;
+    private long tick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickDuration, TimeUnit unit, int wheelSize, String name) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime;
+        pending.add(new Timeout(task, deadline));
+    }
+
+    private void run() {
+        while (true) {
+            long tickDeadline = (tick + 1) * tickNanos;
+            long sleepNanos = tickDeadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            long dueTick = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (dueTick - tick) / buckets.length;
+            buckets[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        List<Timeout> due = null;
+        for (Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            Timeout timeout = it.next();
+            if (timeout.rounds <= 0) {
+                it.remove();
+                if (due == null) due = new ArrayList<>();
+                due.add(timeout);
+            } else {
+                timeout.rounds--;
+            }
+        }
+        if (due == null) return;
+
+        // Everything due this tick sends as one batch, so a connection gets one write per tick
+        WriteBatch.begin();
+        try {
+            for (Timeout timeout : due) {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    System.err.println(worker.getName() + ": timer task failed: " + e);
+                }
+            }
+        } finally {
+            WriteBatch.end();
+        }
+    }
+
+    private static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
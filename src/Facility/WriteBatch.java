@@ -0,0 +1,44 @@
+package Facility;
+
+import java.util.ArrayList;
+
+/**
+ * Holds back the flush of connection output produced on the current thread until the batch
+ * ends, so everything one selector turn or one timer tick sends to a connection leaves in a
+ * single write. Batches nest; only the outermost end() flushes. Outside a batch sends are
+ * flushed as soon as they are queued.
+ */
+final class WriteBatch {
+    private static final ThreadLocal<WriteBatch> CURRENT = ThreadLocal.withInitial(WriteBatch::new);
+
+    private final ArrayList<SelectorServer.Connection> deferred = new ArrayList<>();
+    private int depth;
+
+    private WriteBatch() {
+    }
+
+    static void begin() {
+        CURRENT.get().depth++;
+    }
+
+    static void end() {
+        WriteBatch batch = CURRENT.get();
+        if (--batch.depth > 0) return;
+        for (SelectorServer.Connection connection : batch.deferred) {
+            connection.flush();
+        }
+        batch.deferred.clear();
+    }
+
+    /** True if the connection will be flushed when the current batch ends. */
+    static boolean defer(SelectorServer.Connection connection) {
+        WriteBatch batch = CURRENT.get();
+        if (batch.depth == 0) return false;
+        int last = batch.deferred.size() - 1;
+        // Consecutive sends to one connection are the common case; flushing twice is harmless
+        if (last < 0 || batch.deferred.get(last) != connection) {
+            batch.deferred.add(connection);
+        }
+        return true;
+    }
+}
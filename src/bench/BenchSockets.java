@@ -0,0 +1,45 @@
+package bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+
+/** Port helpers for benchmarks that start their own facility server on loopback. */
+final class BenchSockets {
+    private static final long START_TIMEOUT_MILLIS = 10000;
+
+    private BenchSockets() {
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /** Waits until something accepts connections on host:port, for up to ten seconds. */
+    static void waitForPort(String host, int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            SocketChannel probe = null;
+            try {
+                probe = SocketChannel.open(new InetSocketAddress(host, port));
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            } finally {
+                close(probe);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    private static void close(SocketChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import Facility.BathroomServer;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import core.metrics.LatencyHistogram;
+import factory.agents.BathroomConnection;
+import factory.agents.FacilityClient;
+import factory.agents.FacilityListener;
+import factory.agents.LocalFacilityConnection;
+
+/**
+ * Compares break latency through a BathroomServer over loopback TCP with the in-process
+ * LocalFacilityConnection. The facility has no dwell time, so only the transport is measured.
+ *
+ * Usage: java bench.BreakLatencyBenchmark [breaks]
+ */
+public class BreakLatencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int breaks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int warmup = Math.max(100, breaks / 10);
+
+        InstantFacility facility = new InstantFacility(5);
+        int port = BenchSockets.freePort();
+        Thread serverThread = new Thread(() -> {
+            try {
+                new BathroomServer(port, facility).start();
+            } catch (IOException e) {
+                System.err.println("Benchmark server failed: " + e.getMessage());
+            }
+        }, "BenchmarkBathroomServer");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(200);
+
+        LatencyHistogram tcp = new LatencyHistogram();
+        LatencyHistogram tcpWithTeardown = new LatencyHistogram();
+        LatencyHistogram local = new LatencyHistogram();
+        LatencyHistogram localWithTeardown = new LatencyHistogram();
+
+        run("tcp", breaks, warmup, tcp, tcpWithTeardown,
+                probe -> new BathroomConnection("localhost", port, probe));
+        run("in-process", breaks, warmup, local, localWithTeardown,
+                probe -> new LocalFacilityConnection(facility, probe));
+
+        System.out.println();
+        System.out.println("Break latency, request to BREAK_COMPLETE (" + breaks + " breaks):");
+        System.out.println("  tcp         " + tcp.summary());
+        System.out.println("  in-process  " + local.summary());
+        System.out.println("Including connection teardown:");
+        System.out.println("  tcp         " + tcpWithTeardown.summary());
+        System.out.println("  in-process  " + localWithTeardown.summary());
+        System.out.printf("Mean speedup: %.1fx%n", tcpWithTeardown.getMeanNanos() / Math.max(1.0, localWithTeardown.getMeanNanos()));
+    }
+
+    interface ClientFactory {
+        FacilityClient create(Probe probe);
+    }
+
+    private static void run(String mode, int breaks, int warmup, LatencyHistogram latency,
+                            LatencyHistogram withTeardown, ClientFactory factory) throws InterruptedException {
+        System.out.println("Running " + mode + " (" + warmup + " warmup + " + breaks + " breaks)...");
+        for (int i = 0; i < warmup + breaks; i++) {
+            Probe probe = new Probe("Bench-" + mode + "-" + i);
+            long start = System.nanoTime();
+            // Mirrors a worker: request a break, stop listening once it is over
+            FacilityClient client = factory.create(probe);
+            client.requestBreak();
+            if (!probe.done.await(5, TimeUnit.SECONDS)) {
+                System.err.println(mode + ": break " + i + " timed out");
+            }
+            long completed = System.nanoTime();
+            client.close();
+            long closed = System.nanoTime();
+
+            if (i >= warmup) {
+                latency.record(completed - start);
+                withTeardown.record(closed - start);
+            }
+        }
+    }
+
+    static class Probe implements FacilityListener {
+        private final String id;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Probe(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getThreadID() {
+            return id;
+        }
+
+        @Override
+        public void updateStateFromServer(AgentState newState) {
+        }
+
+        @Override
+        public void updateLocationFromServer(AgentLocation newLocation) {
+        }
+
+        @Override
+        public void handleServerEvent(String eventType) {
+            if ("BREAK_COMPLETE".equals(eventType)) {
+                done.countDown();
+            }
+        }
+    }
+}
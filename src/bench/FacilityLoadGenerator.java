@@ -0,0 +1,427 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import Facility.FacilityRegistry;
+import Facility.FacilityServer;
+import core.metrics.LatencyHistogram;
+
+/**
+ * Open-loop load generator for a facility server. A pool of simulated clients connects at a
+ * given rate and says HELLO; break requests then arrive as a Poisson process at a given rate,
+ * each taken by an idle client. Reports connect, HELLO, time-to-ON_BREAK and
+ * time-to-BREAK_COMPLETE percentiles plus error counts. Everything runs on one selector thread.
+ *
+ * Usage: java bench.FacilityLoadGenerator [--option=value ...]
+ *   --host=localhost --port=5002 --facility=BATHROOM   target server and facility
+ *   --clients=2000 --connect-rate=1000                 pool size and connects per second
+ *   --rate=500 --duration=30                           break arrivals per second, seconds
+ *   --spawn --capacity=50 --use-ms=100                 start a loopback server in a child JVM
+ */
+public class FacilityLoadGenerator {
+    private static final int MAX_PENDING_CONNECTS = 500;
+    private static final long DRAIN_TIMEOUT_NANOS = 60_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 5 && args[0].equals("server")) {
+            runServer(Integer.parseInt(args[1]), args[2], Integer.parseInt(args[3]), Long.parseLong(args[4]));
+            return;
+        }
+
+        Map<String, String> options = parseOptions(args);
+        String host = options.getOrDefault("host", "localhost");
+        String facility = FacilityRegistry.normalize(options.getOrDefault("facility", "BATHROOM"));
+        boolean spawn = options.containsKey("spawn");
+        int port = Integer.parseInt(options.getOrDefault("port", spawn ? String.valueOf(BenchSockets.freePort()) : "5002"));
+
+        Process server = null;
+        File serverLog = null;
+        if (spawn) {
+            serverLog = File.createTempFile("facility-load", ".log");
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    FacilityLoadGenerator.class.getName(), "server", String.valueOf(port), facility,
+                    options.getOrDefault("capacity", "50"), options.getOrDefault("use-ms", "100"))
+                    .redirectErrorStream(true)
+                    .redirectOutput(serverLog)
+                    .start();
+            host = "localhost";
+            BenchSockets.waitForPort(host, port);
+        }
+
+        try {
+            new Generator(host, port, facility,
+                    Integer.parseInt(options.getOrDefault("clients", "2000")),
+                    Double.parseDouble(options.getOrDefault("connect-rate", "1000")),
+                    Double.parseDouble(options.getOrDefault("rate", "500")),
+                    Double.parseDouble(options.getOrDefault("duration", "30"))).run();
+        } finally {
+            if (server != null) {
+                server.destroy();
+                server.waitFor();
+                serverLog.delete();
+            }
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            String[] entry = arg.substring(2).split("=", 2);
+            options.put(entry[0], entry.length > 1 ? entry[1] : "true");
+        }
+        return options;
+    }
+
+    private static void runServer(int port, String facility, int capacity, long useMillis) throws IOException {
+        FacilityRegistry registry = new FacilityRegistry().register(facility, new InstantFacility(capacity, useMillis));
+        new FacilityServer(port, registry).start();
+    }
+
+    private static class Client {
+        final String id;
+        final SocketChannel channel;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+        long connectStart, connected, helloSent, requested;
+        boolean ready, onBreak, busy, quitting, closed;
+
+        Client(String id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+    }
+
+    private static class Generator {
+        private final String host;
+        private final int port;
+        private final String requestLine;
+        private final int clients;
+        private final double connectRate;
+        private final double arrivalRate;
+        private final double durationSeconds;
+
+        private final Selector selector;
+        private final Random random = new Random();
+        private final List<Client> pool;
+        private final ArrayDeque<Client> idle;
+        private final Map<String, Integer> errors = new TreeMap<>();
+
+        private final LatencyHistogram connectLatency = new LatencyHistogram();
+        private final LatencyHistogram helloLatency = new LatencyHistogram();
+        private final LatencyHistogram onBreakLatency = new LatencyHistogram();
+        private final LatencyHistogram completeLatency = new LatencyHistogram();
+
+        private int pendingConnects, ready, arrivals, saturated, inFlight, completed, byes;
+
+        Generator(String host, int port, String facility, int clients, double connectRate,
+                  double arrivalRate, double durationSeconds) throws IOException {
+            this.host = host;
+            this.port = port;
+            this.requestLine = "REQUEST_" + facility;
+            this.clients = clients;
+            this.connectRate = connectRate;
+            this.arrivalRate = arrivalRate;
+            this.durationSeconds = durationSeconds;
+            this.selector = Selector.open();
+            this.pool = new ArrayList<>(clients);
+            this.idle = new ArrayDeque<>(clients);
+        }
+
+        void run() throws IOException {
+            System.out.printf("Target %s:%d %s, %d clients at %.0f connects/s, %.0f breaks/s for %.0fs%n",
+                    host, port, requestLine, clients, connectRate, arrivalRate, durationSeconds);
+
+            // Ramp-up: connects are paced, not just capped, so connect latency is not self-inflicted
+            long start = System.nanoTime();
+            int next = 0;
+            while (ready + errorCount() < clients && System.nanoTime() - start < DRAIN_TIMEOUT_NANOS) {
+                long due = (long) (next / connectRate * 1e9);
+                while (next < clients && pendingConnects < MAX_PENDING_CONNECTS && System.nanoTime() - start >= due) {
+                    connect(next++);
+                    due = (long) (next / connectRate * 1e9);
+                }
+                poll(1);
+            }
+            System.out.printf("%d clients ready in %.2fs (%d errors)%n", ready, (System.nanoTime() - start) / 1e9, errorCount());
+
+            // Load: Poisson arrivals, each handed to an idle client
+            long loadStart = System.nanoTime();
+            long loadEnd = loadStart + (long) (durationSeconds * 1e9);
+            long nextArrival = loadStart + exponentialNanos();
+            long nextReport = loadStart + 1_000_000_000L;
+            while (System.nanoTime() < loadEnd) {
+                long now = System.nanoTime();
+                while (nextArrival <= now && nextArrival < loadEnd) {
+                    arrive(nextArrival);
+                    nextArrival += exponentialNanos();
+                }
+                if (now >= nextReport) {
+                    System.out.printf("  t=%3.0fs arrivals=%d completed=%d in-flight=%d saturated=%d errors=%d%n",
+                            (now - loadStart) / 1e9, arrivals, completed, inFlight, saturated, errorCount());
+                    nextReport += 1_000_000_000L;
+                }
+                long waitMillis = Math.max(1, Math.min(nextArrival, loadEnd) - System.nanoTime()) / 1_000_000;
+                poll(Math.max(1, Math.min(waitMillis, 100)));
+            }
+            double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+
+            // Drain outstanding breaks, then say goodbye
+            long drainStart = System.nanoTime();
+            while (inFlight > 0 && System.nanoTime() - drainStart < DRAIN_TIMEOUT_NANOS) {
+                poll(100);
+            }
+            if (inFlight > 0) {
+                error("timeout", inFlight);
+            }
+            quitAll();
+
+            report(loadSeconds);
+            for (Client client : pool) {
+                close(client);
+            }
+            selector.close();
+        }
+
+        private long exponentialNanos() {
+            return (long) (-Math.log(1 - random.nextDouble()) / arrivalRate * 1e9);
+        }
+
+        private void arrive(long scheduledAt) {
+            arrivals++;
+            Client client = idle.poll();
+            if (client == null) {
+                // Every client is already on a break; an open-loop generator drops the arrival
+                saturated++;
+                return;
+            }
+            client.busy = true;
+            client.onBreak = false;
+            // Latency counts from the scheduled arrival, so falling behind shows up in it
+            client.requested = scheduledAt;
+            inFlight++;
+            send(client, requestLine);
+        }
+
+        private void quitAll() throws IOException {
+            int expected = 0;
+            for (Client client : pool) {
+                if (client.ready && !client.closed) {
+                    client.quitting = true;
+                    send(client, "QUIT");
+                    expected++;
+                }
+            }
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (byes < expected && System.nanoTime() < deadline) {
+                poll(100);
+            }
+            if (byes < expected) {
+                error("no BYE", expected - byes);
+            }
+        }
+
+        private void connect(int index) throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            Client client = new Client("Load-" + index, channel);
+            pool.add(client);
+            client.connectStart = System.nanoTime();
+            pendingConnects++;
+            try {
+                if (channel.connect(new InetSocketAddress(host, port))) {
+                    onConnected(client, channel.register(selector, SelectionKey.OP_READ, client));
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, client);
+                }
+            } catch (IOException e) {
+                pendingConnects--;
+                error("connect: " + e.getClass().getSimpleName(), 1);
+                close(client);
+            }
+        }
+
+        private void onConnected(Client client, SelectionKey key) {
+            pendingConnects--;
+            client.connected = System.nanoTime();
+            connectLatency.record(client.connected - client.connectStart);
+            key.interestOps(SelectionKey.OP_READ);
+            client.helloSent = System.nanoTime();
+            send(client, "HELLO " + client.id);
+        }
+
+        private void send(Client client, String line) {
+            ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+            try {
+                // Lines are tiny and each client has at most one in flight
+                while (bytes.hasRemaining()) {
+                    client.channel.write(bytes);
+                }
+            } catch (IOException e) {
+                lost(client, "write: " + e.getMessage());
+            }
+        }
+
+        private void poll(long timeoutMillis) throws IOException {
+            selector.select(timeoutMillis);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                if (!key.isValid()) continue;
+                try {
+                    if (key.isConnectable()) {
+                        client.channel.finishConnect();
+                        onConnected(client, key);
+                    } else if (key.isReadable()) {
+                        read(client);
+                    }
+                } catch (IOException e) {
+                    if (client.connected == 0) {
+                        pendingConnects--;
+                        error("connect: " + e.getClass().getSimpleName(), 1);
+                        close(client);
+                    } else {
+                        lost(client, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        private void read(Client client) throws IOException {
+            int n = client.channel.read(client.readBuffer);
+            if (n < 0) {
+                throw new IOException("closed by server");
+            }
+            ByteBuffer buffer = client.readBuffer;
+            buffer.flip();
+            int lineStart = 0;
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    String line = new String(buffer.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    onLine(client, line.trim().split("\\s+"));
+                    lineStart = i + 1;
+                }
+            }
+            buffer.position(lineStart);
+            buffer.compact();
+        }
+
+        private void onLine(Client client, String[] parts) {
+            if (parts.length < 3) return;
+            long now = System.nanoTime();
+            String type = parts[0];
+            String value = parts[2];
+
+            if (type.equals("STATE") && value.equals("ON_BREAK") && client.busy && !client.onBreak) {
+                client.onBreak = true;
+                onBreakLatency.record(now - client.requested);
+            } else if (type.equals("EVENT")) {
+                switch (value) {
+                    case "HELLO_OK":
+                        if (!client.ready) {
+                            client.ready = true;
+                            ready++;
+                            helloLatency.record(now - client.helloSent);
+                            idle.add(client);
+                        }
+                        break;
+                    case "BREAK_COMPLETE":
+                        if (client.busy) {
+                            client.busy = false;
+                            inFlight--;
+                            completed++;
+                            completeLatency.record(now - client.requested);
+                            idle.add(client);
+                        }
+                        break;
+                    case "BYE":
+                        byes++;
+                        break;
+                    default:
+                        // UNKNOWN_FACILITY and friends: the request is over, count it and move on
+                        error(value.split(":", 2)[0], 1);
+                        if (client.busy) {
+                            client.busy = false;
+                            inFlight--;
+                            idle.add(client);
+                        }
+                }
+            }
+        }
+
+        // A connection that dies mid-test takes its in-flight break with it
+        private void lost(Client client, String reason) {
+            if (client.closed) return;
+            if (client.quitting) {
+                // The server hangs up after BYE
+                close(client);
+                return;
+            }
+            error("disconnected", 1);
+            if (client.busy) {
+                client.busy = false;
+                inFlight--;
+            }
+            idle.remove(client);
+            close(client);
+        }
+
+        private void close(Client client) {
+            client.closed = true;
+            try {
+                client.channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void error(String kind, int count) {
+            errors.merge(kind, count, Integer::sum);
+        }
+
+        private int errorCount() {
+            int total = 0;
+            for (int count : errors.values()) total += count;
+            return total;
+        }
+
+        private void report(double loadSeconds) {
+            System.out.println();
+            System.out.printf("Arrivals %d (%.1f/s offered), completed %d (%.1f/s), saturated %d%n",
+                    arrivals, arrivals / loadSeconds, completed, completed / loadSeconds, saturated);
+            System.out.println("Connect         " + percentiles(connectLatency));
+            System.out.println("HELLO->HELLO_OK " + percentiles(helloLatency));
+            System.out.println("Time to ON_BREAK " + percentiles(onBreakLatency));
+            System.out.println("Time to COMPLETE " + percentiles(completeLatency));
+            System.out.println("Errors          " + (errors.isEmpty() ? "none" : errors.toString()));
+        }
+
+        private static String percentiles(LatencyHistogram histogram) {
+            return String.format("n=%d p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                    histogram.getCount(),
+                    histogram.getPercentileNanos(50) / 1e6,
+                    histogram.getPercentileNanos(90) / 1e6,
+                    histogram.getPercentileNanos(99) / 1e6,
+                    histogram.getPercentileNanos(99.9) / 1e6,
+                    histogram.getMaxNanos() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import Facility.BathroomServer;
+import core.metrics.LatencyHistogram;
+
+/**
+ * Holds N concurrent agent connections against a BathroomServer and has every one of them take
+ * a break at once. The server runs in a child JVM (so client and server sockets do not share
+ * one file descriptor limit) with an InstantFacility, and reports its thread counts to a log.
+ *
+ * Usage: java bench.FacilityServerBenchmark [connections]
+ */
+public class FacilityServerBenchmark {
+    private static final int MAX_PENDING_CONNECTS = 500;
+    private static final long TIMEOUT_NANOS = 300_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("server")) {
+            runServer(Integer.parseInt(args[1]));
+            return;
+        }
+
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int port = BenchSockets.freePort();
+        File serverLog = File.createTempFile("facility-server", ".log");
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                FacilityServerBenchmark.class.getName(), "server", String.valueOf(port))
+                .redirectErrorStream(true)
+                .redirectOutput(serverLog)
+                .start();
+
+        try {
+            BenchSockets.waitForPort("localhost", port);
+            new Client(connections, port).run();
+            Thread.sleep(1500);
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+
+        String threads = "n/a";
+        for (String line : Files.readAllLines(serverLog.toPath())) {
+            if (line.startsWith("THREADS")) threads = line;
+        }
+        System.out.println("Server " + threads);
+        serverLog.delete();
+    }
+
+    private static void runServer(int port) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.println("THREADS live=" + threads.getThreadCount() + " peak=" + threads.getPeakThreadCount());
+            }
+        }, "ThreadReporter");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        new BathroomServer(port, new InstantFacility(5)).start();
+    }
+
+    private static class Agent {
+        final String id;
+        final SocketChannel channel;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+        long connectStart, connected, helloSent, breakRequested;
+        boolean helloOk, breakDone;
+
+        Agent(String id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+    }
+
+    private static class Client {
+        private final int connections;
+        private final int port;
+        private final Selector selector;
+        private final List<Agent> agents;
+        private final LatencyHistogram connectLatency = new LatencyHistogram();
+        private final LatencyHistogram helloLatency = new LatencyHistogram();
+        private final LatencyHistogram breakLatency = new LatencyHistogram();
+        private int pendingConnects, helloCount, breakCount, errors;
+
+        Client(int connections, int port) throws IOException {
+            this.connections = connections;
+            this.port = port;
+            this.selector = Selector.open();
+            this.agents = new ArrayList<>(connections);
+        }
+
+        void run() throws IOException {
+            long start = System.nanoTime();
+            int next = 0;
+            while (helloCount + errors < connections && System.nanoTime() - start < TIMEOUT_NANOS) {
+                while (next < connections && pendingConnects < MAX_PENDING_CONNECTS) {
+                    connect(next++);
+                }
+                poll();
+            }
+            long established = System.nanoTime();
+            System.out.printf("%d connections established in %.2fs (%d errors)%n",
+                    helloCount, (established - start) / 1e9, errors);
+
+            for (Agent agent : agents) {
+                if (agent.helloOk) {
+                    agent.breakRequested = System.nanoTime();
+                    send(agent, "REQUEST_BATHROOM");
+                }
+            }
+            while (breakCount + errors < connections && System.nanoTime() - established < TIMEOUT_NANOS) {
+                poll();
+            }
+            long finished = System.nanoTime();
+            double seconds = (finished - established) / 1e9;
+
+            System.out.printf("%d simultaneous breaks completed in %.2fs (%.0f breaks/s)%n",
+                    breakCount, seconds, breakCount / seconds);
+            System.out.println("Connect:        " + connectLatency.summary());
+            System.out.println("HELLO->HELLO_OK " + helloLatency.summary());
+            System.out.println("Break:          " + breakLatency.summary());
+
+            for (Agent agent : agents) {
+                try {
+                    agent.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            selector.close();
+        }
+
+        private void connect(int index) throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            Agent agent = new Agent("Bench-" + index, channel);
+            agents.add(agent);
+            agent.connectStart = System.nanoTime();
+            pendingConnects++;
+            if (channel.connect(new InetSocketAddress("localhost", port))) {
+                onConnected(agent, channel.register(selector, SelectionKey.OP_READ, agent));
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, agent);
+            }
+        }
+
+        private void onConnected(Agent agent, SelectionKey key) throws IOException {
+            pendingConnects--;
+            agent.connected = System.nanoTime();
+            connectLatency.record(agent.connected - agent.connectStart);
+            key.interestOps(SelectionKey.OP_READ);
+            agent.helloSent = System.nanoTime();
+            send(agent, "HELLO " + agent.id);
+        }
+
+        private void send(Agent agent, String line) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+            // Lines are tiny; a fresh socket buffer always takes them in one write
+            while (bytes.hasRemaining()) {
+                agent.channel.write(bytes);
+            }
+        }
+
+        private void poll() throws IOException {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Agent agent = (Agent) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        agent.channel.finishConnect();
+                        onConnected(agent, key);
+                    } else if (key.isReadable()) {
+                        read(agent, key);
+                    }
+                } catch (IOException e) {
+                    errors++;
+                    if (agent.connected == 0) pendingConnects--;
+                    key.cancel();
+                    agent.channel.close();
+                }
+            }
+        }
+
+        private void read(Agent agent, SelectionKey key) throws IOException {
+            int n = agent.channel.read(agent.readBuffer);
+            if (n < 0) {
+                throw new IOException("closed by server");
+            }
+            ByteBuffer buffer = agent.readBuffer;
+            buffer.flip();
+            int lineStart = 0;
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    String line = new String(buffer.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    onLine(agent, line.trim());
+                    lineStart = i + 1;
+                }
+            }
+            buffer.position(lineStart);
+            buffer.compact();
+        }
+
+        private void onLine(Agent agent, String line) {
+            long now = System.nanoTime();
+            if (line.endsWith(" HELLO_OK") && !agent.helloOk) {
+                agent.helloOk = true;
+                helloCount++;
+                helloLatency.record(now - agent.helloSent);
+            } else if (line.endsWith(" BREAK_COMPLETE") && !agent.breakDone) {
+                agent.breakDone = true;
+                breakCount++;
+                breakLatency.record(now - agent.breakRequested);
+            }
+        }
+    }
+}
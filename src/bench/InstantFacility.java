@@ -0,0 +1,52 @@
+package bench;
+
+import Facility.ClientChannel;
+import Facility.Facility;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+
+/**
+ * Sends the same messages as Bathroom without any dwell time, so benchmarks measure transport
+ * and admission overhead only. An optional use time makes slots scarce for load tests.
+ */
+public class InstantFacility extends Facility {
+    private final long useMillis;
+
+    public InstantFacility(int capacity) {
+        this(capacity, 0);
+    }
+
+    public InstantFacility(int capacity, long useMillis) {
+        super(capacity);
+        this.useMillis = useMillis;
+    }
+
+    public InstantFacility(int capacity, long useMillis, long agingMillis) {
+        super(capacity, agingMillis);
+        this.useMillis = useMillis;
+    }
+
+    @Override
+    protected long onEnter(String agentId, ClientChannel channel) {
+        channel.sendState(agentId, AgentState.ON_BREAK);
+        return 0;
+    }
+
+    @Override
+    protected long onUse(String agentId, ClientChannel channel) {
+        return useMillis;
+    }
+
+    @Override
+    protected long onExit(String agentId, ClientChannel channel) {
+        return 0;
+    }
+
+    @Override
+    protected void onLeave(String agentId, ClientChannel channel) {
+        // Skip the console line so the benchmark measures the protocol, not stdout
+        channel.sendState(agentId, AgentState.IDLE);
+        channel.sendLocation(agentId, AgentLocation.FACTORY);
+        channel.sendEvent(agentId, "BREAK_COMPLETE");
+    }
+}
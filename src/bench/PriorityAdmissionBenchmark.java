@@ -0,0 +1,97 @@
+package bench;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import Facility.AdmissionPriority;
+import Facility.ClientChannel;
+import Facility.Facility;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import core.metrics.LatencyHistogram;
+
+/**
+ * Wait times per AdmissionPriority class under heavy contention. Poisson arrivals (20% HIGH,
+ * 50% NORMAL, 30% LOW) are offered in-process to one facility at the given utilization, once
+ * per queueing policy: plain FIFO (aging 0), priority with aging, and strict priority (aging
+ * of an hour, so only order of class matters). All requests are drained before reporting.
+ *
+ * Usage: java bench.PriorityAdmissionBenchmark [seconds] [utilization] [agingMillis]
+ */
+public class PriorityAdmissionBenchmark {
+    private static final int CAPACITY = 4;
+    private static final long USE_MILLIS = 50;
+    private static final double[] MIX = {0.2, 0.5, 0.3};
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        double utilization = args.length > 1 ? Double.parseDouble(args[1]) : 0.85;
+        long agingMillis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+
+        double rate = utilization * CAPACITY * 1000.0 / USE_MILLIS;
+        System.out.printf(Locale.ROOT, "%d slots x %d ms, %.0f arrivals/s (utilization %.2f) for %d s%n",
+                CAPACITY, USE_MILLIS, rate, utilization, seconds);
+        run("fifo", 0, rate, seconds);
+        run("aging " + agingMillis + "ms", agingMillis, rate, seconds);
+        run("strict", TimeUnit.HOURS.toMillis(1), rate, seconds);
+    }
+
+    private static void run(String policy, long agingMillis, double rate, int seconds) throws InterruptedException {
+        Facility facility = new InstantFacility(CAPACITY, USE_MILLIS, agingMillis);
+        ClientChannel channel = new DiscardChannel();
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long next = start;
+        int sent = 0;
+        while (next < end) {
+            next += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+            long delay = next - System.nanoTime();
+            if (delay > 0) LockSupport.parkNanos(delay);
+            facility.handleAccessRequest("Agent-" + sent++, channel, Facility.NO_REQUEST_ID, pick(random));
+        }
+
+        long drainDeadline = System.currentTimeMillis() + 60_000;
+        while (facility.getServed() < sent && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(20);
+        }
+
+        // Phases end on timer ticks, so a slot is held a little longer than USE_MILLIS
+        double heldMillis = facility.getUseTimes().getMeanNanos() / 1e6;
+        System.out.printf(Locale.ROOT, "%s: %d/%d served, slot held %.1f ms, actual utilization %.2f%n",
+                policy, facility.getServed(), sent, heldMillis, rate * heldMillis / 1000 / CAPACITY);
+        for (AdmissionPriority priority : AdmissionPriority.values()) {
+            LatencyHistogram waits = facility.getWaitTimes(priority);
+            System.out.printf(Locale.ROOT, "  %-7s n=%-6d p50=%8.1fms p90=%8.1fms p99=%8.1fms max=%8.1fms%n",
+                    priority, waits.getCount(),
+                    waits.getPercentileNanos(50) / 1e6, waits.getPercentileNanos(90) / 1e6,
+                    waits.getPercentileNanos(99) / 1e6, waits.getMaxNanos() / 1e6);
+        }
+    }
+
+    private static AdmissionPriority pick(Random random) {
+        double r = random.nextDouble();
+        for (int i = 0; i < MIX.length; i++) {
+            r -= MIX[i];
+            if (r < 0) return AdmissionPriority.of(i);
+        }
+        return AdmissionPriority.LOW;
+    }
+
+    private static class DiscardChannel implements ClientChannel {
+        @Override
+        public void sendState(String agentId, AgentState state) {
+        }
+
+        @Override
+        public void sendLocation(String agentId, AgentLocation location) {
+        }
+
+        @Override
+        public void sendEvent(String agentId, String eventType) {
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Facility.BathroomServer;
+import Facility.BinaryProtocol;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import factory.agents.BathroomConnection;
+import factory.agents.FacilityListener;
+import factory.agents.FacilityMultiplexer;
+
+/**
+ * Text versus binary facility protocol. The codec pass encodes and decodes the messages of one
+ * break (request, WAITING, ON_BREAK, IDLE, FACTORY, BREAK_COMPLETE) and reports messages/sec
+ * and bytes/message; the loopback pass runs the same breaks through a BathroomServer with many
+ * agents on one multiplexed connection per mode.
+ *
+ * Usage: java bench.ProtocolBenchmark [agents] [rounds]
+ */
+public class ProtocolBenchmark {
+    private static final int CODEC_ITERATIONS = 2_000_000;
+    // Same magnitude as the IDs FacilityConnection hands out
+    private static final long REQUEST_ID_BASE = System.currentTimeMillis() * 1000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        System.out.println("Codec, " + CODEC_ITERATIONS + " breaks (6 messages each):");
+        codec("text", true);
+        codec("binary", false);
+
+        int port = BenchSockets.freePort();
+        Thread serverThread = new Thread(() -> {
+            try {
+                new BathroomServer(port, new InstantFacility(agents)).start();
+            } catch (IOException e) {
+                System.err.println("Benchmark server failed: " + e.getMessage());
+            }
+        }, "BenchmarkBathroomServer");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(200);
+
+        System.out.println("Loopback, " + agents + " agents x " + rounds + " rounds on one connection:");
+        loopback("text", FacilityMultiplexer.get("localhost", port, false), agents, rounds);
+        loopback("binary", FacilityMultiplexer.get("localhost", port, true), agents, rounds);
+    }
+
+    private static void codec(String mode, boolean text) {
+        // Two warmup passes so both codecs are compiled before the timed one
+        long bytes = 0;
+        long start = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            start = System.nanoTime();
+            bytes = text ? textBreaks(CODEC_ITERATIONS) : binaryBreaks(CODEC_ITERATIONS);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long messages = CODEC_ITERATIONS * 6L;
+        System.out.printf("  %-7s %,12.0f msg/s  %5.1f bytes/msg%n", mode, messages / seconds, (double) bytes / messages);
+    }
+
+    private static long textBreaks(int iterations) {
+        long bytes = 0;
+        String agent = "Worker-1234";
+        for (int i = 0; i < iterations; i++) {
+            bytes += textRoundTrip("REQUEST_BATHROOM " + agent + " " + (REQUEST_ID_BASE + i));
+            bytes += textRoundTrip("STATE " + agent + " " + AgentState.WAITING.name());
+            bytes += textRoundTrip("STATE " + agent + " " + AgentState.ON_BREAK.name());
+            bytes += textRoundTrip("STATE " + agent + " " + AgentState.IDLE.name());
+            bytes += textRoundTrip("LOCATION " + agent + " " + AgentLocation.FACTORY.name());
+            bytes += textRoundTrip("EVENT " + agent + " BREAK_COMPLETE");
+        }
+        return bytes;
+    }
+
+    // Same work as SelectorServer / FacilityMultiplexer do per text line
+    private static int textRoundTrip(String line) {
+        byte[] wire = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        String[] parts = new String(wire, 0, wire.length - 1, StandardCharsets.UTF_8).trim().split("\\s+");
+        switch (parts[0]) {
+            case "STATE":
+                sink = AgentState.valueOf(parts[2]);
+                break;
+            case "LOCATION":
+                sink = AgentLocation.valueOf(parts[2]);
+                break;
+            default:
+                sink = parts[parts.length - 1];
+        }
+        return wire.length;
+    }
+
+    private static long binaryBreaks(int iterations) {
+        long bytes = 0;
+        int agent = 1234;
+        for (int i = 0; i < iterations; i++) {
+            bytes += binaryRoundTrip(BinaryProtocol.encodeRequest(agent, 0, REQUEST_ID_BASE + i));
+            bytes += binaryRoundTrip(BinaryProtocol.encodeState(agent, AgentState.WAITING));
+            bytes += binaryRoundTrip(BinaryProtocol.encodeState(agent, AgentState.ON_BREAK));
+            bytes += binaryRoundTrip(BinaryProtocol.encodeState(agent, AgentState.IDLE));
+            bytes += binaryRoundTrip(BinaryProtocol.encodeLocation(agent, AgentLocation.FACTORY));
+            bytes += binaryRoundTrip(BinaryProtocol.encodeEvent(agent, "BREAK_COMPLETE"));
+        }
+        return bytes;
+    }
+
+    private static int binaryRoundTrip(ByteBuffer frame) {
+        int length = frame.remaining();
+        frame.getShort();
+        byte type = frame.get();
+        int agent = frame.getInt();
+        switch (type) {
+            case BinaryProtocol.STATE:
+                sink = BinaryProtocol.state(frame.get() & 0xFF);
+                break;
+            case BinaryProtocol.LOCATION:
+                sink = BinaryProtocol.location(frame.get() & 0xFF);
+                break;
+            case BinaryProtocol.EVENT:
+                sink = BinaryProtocol.event(frame.get() & 0xFF);
+                break;
+            default:
+                sink = agent;
+        }
+        return length;
+    }
+
+    private static void loopback(String mode, FacilityMultiplexer multiplexer, int agents, int rounds)
+            throws InterruptedException {
+        AtomicLong messages = new AtomicLong();
+        List<Probe> probes = new ArrayList<>(agents);
+        List<BathroomConnection> connections = new ArrayList<>(agents);
+        for (int i = 0; i < agents; i++) {
+            Probe probe = new Probe("Bench-" + mode + "-" + i, messages);
+            probes.add(probe);
+            connections.add(new BathroomConnection(multiplexer, probe));
+        }
+
+        long start = 0;
+        int timed = 0;
+        for (int round = -2; round < rounds; round++) {
+            if (round == 0) {
+                start = System.nanoTime();
+                messages.set(0);
+            }
+            CountDownLatch done = new CountDownLatch(agents);
+            for (Probe probe : probes) {
+                probe.done = done;
+            }
+            for (BathroomConnection connection : connections) {
+                connection.requestBreak();
+            }
+            if (!done.await(30, TimeUnit.SECONDS)) {
+                System.err.println(mode + ": round " + round + " timed out with " + done.getCount() + " breaks open");
+            }
+            if (round >= 0) timed++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long breaks = (long) agents * timed;
+        // Requests go out too, one per break
+        long total = messages.get() + breaks;
+        System.out.printf("  %-7s %,10.0f breaks/s  %,12.0f msg/s  (negotiated %s)%n",
+                mode, breaks / seconds, total / seconds, multiplexer.isBinary() ? "binary" : "text");
+
+        for (BathroomConnection connection : connections) {
+            connection.close();
+        }
+        multiplexer.close();
+    }
+
+    private static class Probe implements FacilityListener {
+        private final String id;
+        private final AtomicLong messages;
+        volatile CountDownLatch done;
+
+        Probe(String id, AtomicLong messages) {
+            this.id = id;
+            this.messages = messages;
+        }
+
+        @Override
+        public String getThreadID() {
+            return id;
+        }
+
+        @Override
+        public void updateStateFromServer(AgentState newState) {
+            messages.incrementAndGet();
+        }
+
+        @Override
+        public void updateLocationFromServer(AgentLocation newLocation) {
+            messages.incrementAndGet();
+        }
+
+        @Override
+        public void handleServerEvent(String eventType) {
+            messages.incrementAndGet();
+            if (eventType.equals("BREAK_COMPLETE")) {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import Facility.FacilityRegistry;
+import Facility.FacilityServer;
+import Facility.FacilityType;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import factory.agents.BathroomConnection;
+import factory.agents.FacilityListener;
+import factory.agents.FacilityMultiplexer;
+
+/**
+ * Server output with and without write coalescing. For each setting a facility server runs in a
+ * child JVM (-Dfacility.coalesce=false / true) with an InstantFacility, and many agents on one
+ * multiplexed connection per protocol take breaks in rounds. Reports, per break, the messages
+ * the server sent, the socket writes it made (from its STATS line) and the TCP segments the
+ * host sent in both directions, ACKs included (from /proc/net/snmp, Linux only).
+ *
+ * Usage: java bench.WriteCoalescingBenchmark [agents] [rounds] [useMillis]
+ */
+public class WriteCoalescingBenchmark {
+    private static final String SNMP = "/proc/net/snmp";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 4 && args[0].equals("server")) {
+            runServer(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]));
+            return;
+        }
+
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long useMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+        System.out.println(agents + " agents x " + rounds + " rounds on one connection, use time " + useMillis + " ms");
+        System.out.println("  coalesce protocol    breaks/s  msgs/break  writes/break  segments/break");
+        for (boolean coalesce : new boolean[] {false, true}) {
+            int port = BenchSockets.freePort();
+            Process server = startServer(coalesce, port, agents, useMillis);
+            try {
+                BenchSockets.waitForPort("localhost", port);
+                run(coalesce, "text", port, false, agents, rounds);
+                run(coalesce, "binary", port, true, agents, rounds);
+            } finally {
+                server.destroy();
+                server.waitFor();
+            }
+        }
+    }
+
+    private static Process startServer(boolean coalesce, int port, int capacity, long useMillis) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new ProcessBuilder(java, "-Dfacility.coalesce=" + coalesce,
+                "-cp", System.getProperty("java.class.path"),
+                WriteCoalescingBenchmark.class.getName(), "server",
+                String.valueOf(port), String.valueOf(capacity), String.valueOf(useMillis))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    private static void runServer(int port, int capacity, long useMillis) throws IOException {
+        FacilityRegistry registry = new FacilityRegistry()
+                .register(FacilityType.BATHROOM.name(), new InstantFacility(capacity, useMillis));
+        new FacilityServer(port, registry).start();
+    }
+
+    private static void run(boolean coalesce, String mode, int port, boolean binary, int agents, int rounds)
+            throws IOException, InterruptedException {
+        FacilityMultiplexer multiplexer = FacilityMultiplexer.get("localhost", port, binary);
+        List<Probe> probes = new ArrayList<>(agents);
+        List<BathroomConnection> connections = new ArrayList<>(agents);
+        for (int i = 0; i < agents; i++) {
+            Probe probe = new Probe("Bench-" + mode + "-" + i);
+            probes.add(probe);
+            connections.add(new BathroomConnection(multiplexer, probe));
+        }
+
+        // Two warmup rounds so connection setup and JIT stay out of the counts
+        runRounds(probes, connections, mode, 2);
+        Map<String, Long> before = serverStats(port);
+        long segmentsBefore = outSegments();
+        long start = System.nanoTime();
+        runRounds(probes, connections, mode, rounds);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long segmentsAfter = outSegments();
+        Map<String, Long> after = serverStats(port);
+
+        double breaks = (double) agents * rounds;
+        String segments = segmentsBefore < 0 || segmentsAfter < 0 ? "n/a"
+                : String.format("%.2f", (segmentsAfter - segmentsBefore) / breaks);
+        System.out.printf("  %-8s %-8s %,10.0f  %10.2f  %12.2f  %14s%n", coalesce, mode, breaks / seconds,
+                (after.get("messages_out") - before.get("messages_out")) / breaks,
+                (after.get("writes") - before.get("writes")) / breaks, segments);
+
+        for (BathroomConnection connection : connections) {
+            connection.close();
+        }
+        multiplexer.close();
+    }
+
+    private static void runRounds(List<Probe> probes, List<BathroomConnection> connections, String mode, int rounds)
+            throws InterruptedException {
+        for (int round = 0; round < rounds; round++) {
+            CountDownLatch done = new CountDownLatch(probes.size());
+            for (Probe probe : probes) {
+                probe.done = done;
+            }
+            for (BathroomConnection connection : connections) {
+                connection.requestBreak();
+            }
+            if (!done.await(30, TimeUnit.SECONDS)) {
+                System.err.println(mode + ": round " + round + " timed out with " + done.getCount() + " breaks open");
+            }
+        }
+    }
+
+    /** The key=value pairs of the server's "STATS server" line. */
+    private static Map<String, Long> serverStats(int port) throws IOException {
+        Map<String, Long> stats = new HashMap<>();
+        try (Socket socket = new Socket("localhost", port)) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out.println("STATS");
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("STATS END")) {
+                if (!line.startsWith("STATS server ")) continue;
+                for (String pair : line.substring("STATS server ".length()).split(" ")) {
+                    String[] kv = pair.split("=", 2);
+                    stats.put(kv[0], Long.parseLong(kv[1]));
+                }
+            }
+            out.println("QUIT");
+        }
+        return stats;
+    }
+
+    /** Host-wide TCP OutSegs counter, or -1 where /proc/net/snmp is not available. */
+    private static long outSegments() {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get(SNMP));
+            String[] names = null;
+            for (String line : lines) {
+                if (!line.startsWith("Tcp:")) continue;
+                String[] fields = line.split("\\s+");
+                if (names == null) {
+                    names = fields;
+                    continue;
+                }
+                for (int i = 1; i < names.length; i++) {
+                    if (names[i].equals("OutSegs")) return Long.parseLong(fields[i]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux, or a kernel without the counter
+        }
+        return -1;
+    }
+
+    private static class Probe implements FacilityListener {
+        private final String id;
+        volatile CountDownLatch done;
+
+        Probe(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getThreadID() {
+            return id;
+        }
+
+        @Override
+        public void updateStateFromServer(AgentState newState) {
+        }
+
+        @Override
+        public void updateLocationFromServer(AgentLocation newLocation) {
+        }
+
+        @Override
+        public void handleServerEvent(String eventType) {
+            if (eventType.equals("BREAK_COMPLETE")) {
+                done.countDown();
+            }
+        }
+    }
+}
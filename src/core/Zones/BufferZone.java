@@ -1,37 +1,265 @@
 package core.Zones;
 
-import java.util.concurrent.Semaphore;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Capacity-limited zone with a single FIFO admission queue. Blocking, timed and asynchronous
+ * requests all wait in the same queue, so none of them can jump ahead of the others. Capacity
+ * can be changed at any time; a shrink below the current occupancy takes effect as holders leave.
+ */
 public class BufferZone {
-    private final Semaphore semaphore;
+    private final ReentrantLock lock;
+    private final ArrayDeque<Ticket> waiters;
     private final String zoneName;
-    private final int capacity;
+    private final ZoneMetrics metrics;
+    private int capacity;
+    private int available;
 
     public BufferZone(int capacity, String zoneName) {
         this.capacity = capacity;
         this.zoneName = zoneName;
-        // true = fair ordering (FIFO for waiting threads)
-        this.semaphore = new Semaphore(capacity, true);
+        this.lock = new ReentrantLock();
+        this.waiters = new ArrayDeque<>();
+        this.available = capacity;
+        this.metrics = new ZoneMetrics(zoneName, capacity);
     }
 
-    public void enter() {
+    /** Waits in the queue for a slot; returns false, holding nothing, if interrupted first. */
+    public boolean enter() {
+        System.out.println(Thread.currentThread().getName() + " is waiting for " + zoneName + "...");
+        Ticket ticket = request();
         try {
-            System.out.println(Thread.currentThread().getName() + " is waiting for " + zoneName + "...");
-            semaphore.acquire();
-            System.out.println(Thread.currentThread().getName() + " entered " + zoneName + ". (Occupancy: " + (capacity - semaphore.availablePermits()) + "/" + capacity + ")");
+            ticket.get();
+            System.out.println(Thread.currentThread().getName() + " entered " + zoneName + ". (Occupancy: " + getOccupiedSlots() + "/" + getCapacity() + ")");
+            return true;
         } catch (InterruptedException e) {
+            abandon(ticket);
             Thread.currentThread().interrupt();
             System.err.println("Interrupted while waiting for " + zoneName);
+            return false;
+        } catch (ExecutionException e) {
+            abandon(ticket);
+            return false;
         }
     }
 
+    /** Takes a slot only if one is free and nobody is queued ahead. */
+    public boolean tryEnter() {
+        try {
+            lock.lock();
+            if (available > 0 && waiters.isEmpty()) {
+                available--;
+                long now = System.nanoTime();
+                metrics.onArrive(now);
+                metrics.onAcquire(now, now);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits in the queue for at most the given time; on timeout or interrupt the caller holds nothing. */
+    public boolean tryEnter(long timeout, TimeUnit unit) {
+        Ticket ticket = request();
+        try {
+            ticket.get(timeout, unit);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return !withdraw(ticket);
+        } catch (InterruptedException e) {
+            abandon(ticket);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Queues for a slot without blocking. The future completes once the slot is held; callbacks
+     * attached to it run on the thread that freed the slot, so they should stay short. To give
+     * up, pass the future to {@link #abandon}.
+     */
+    public CompletableFuture<Void> enterAsync() {
+        return request();
+    }
+
+    /**
+     * Withdraws a request made through {@link #enterAsync}. If the slot was already granted it is
+     * released, so afterwards the caller never holds it. Returns true if the request was still
+     * queued; abandoning a request that was already withdrawn does nothing and returns false.
+     */
+    public boolean abandon(CompletableFuture<Void> request) {
+        if (!(request instanceof Ticket)) return false;
+        Ticket ticket = (Ticket) request;
+        if (withdraw(ticket)) return true;
+        // Only a granted ticket holds a slot; a cancelled one was already given up
+        if (ticket.releaseGrant()) {
+            leave();
+        }
+        return false;
+    }
+
+    // True if the ticket was still pending and is now cancelled, false if it was granted or already cancelled.
+    private boolean withdraw(Ticket ticket) {
+        try {
+            lock.lock();
+            waiters.remove(ticket);
+        } finally {
+            lock.unlock();
+        }
+
+        if (ticket.cancel(false)) {
+            metrics.onAbandon(System.nanoTime());
+            dispatch();
+            return true;
+        }
+        return false;
+    }
+
     public void leave() {
-        semaphore.release();
-        System.out.println(Thread.currentThread().getName() + " left " + zoneName + ". (Available spots: " + semaphore.availablePermits() + ")");
+        try {
+            lock.lock();
+            available++;
+        } finally {
+            lock.unlock();
+        }
+        metrics.onRelease(System.nanoTime());
+        System.out.println(Thread.currentThread().getName() + " left " + zoneName + ". (Available spots: " + getAvailableSlots() + ")");
+        dispatch();
+    }
+
+    private Ticket request() {
+        Ticket ticket = new Ticket(System.nanoTime());
+        metrics.onArrive(ticket.arrivedAt);
+        try {
+            lock.lock();
+            waiters.add(ticket);
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+        return ticket;
+    }
+
+    // Hands free slots to queued tickets in order; futures are completed outside the lock.
+    private void dispatch() {
+        while (true) {
+            Ticket next;
+            try {
+                lock.lock();
+                if (available <= 0 || waiters.isEmpty()) return;
+                next = waiters.poll();
+                available--;
+            } finally {
+                lock.unlock();
+            }
+
+            if (next.grant()) {
+                metrics.onAcquire(next.arrivedAt, System.nanoTime());
+                next.complete(null);
+            } else {
+                try {
+                    lock.lock();
+                    available++;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /** Grows or shrinks the zone. Growing admits queued requests immediately. */
+    public void setCapacity(int newCapacity) {
+        if (newCapacity < 0) throw new IllegalArgumentException("capacity < 0: " + newCapacity);
+        try {
+            lock.lock();
+            // available goes negative when shrinking below occupancy; leave() pays it back
+            available += newCapacity - capacity;
+            capacity = newCapacity;
+            metrics.onCapacityChange(newCapacity, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+        System.out.println(zoneName + " capacity set to " + newCapacity);
+        dispatch();
+    }
+
+    public int getCapacity() {
+        try {
+            lock.lock();
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Slots currently held, which can exceed the capacity right after a shrink. */
+    public int getOccupiedSlots() {
+        try {
+            lock.lock();
+            return capacity - available;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public int getAvailableSlots() {
-        return semaphore.availablePermits();
+        try {
+            lock.lock();
+            return Math.max(0, available);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueLength() {
+        try {
+            lock.lock();
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getZoneName() {
+        return zoneName;
+    }
+
+    public ZoneMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static class Ticket extends CompletableFuture<Void> {
+        private static final int PENDING = 0, GRANTED = 1, CANCELLED = 2;
+
+        private final long arrivedAt;
+        private final AtomicInteger status;
+
+        Ticket(long arrivedAt) {
+            this.arrivedAt = arrivedAt;
+            this.status = new AtomicInteger(PENDING);
+        }
+
+        boolean grant() {
+            return status.compareAndSet(PENDING, GRANTED);
+        }
+
+        // Hands a granted slot back exactly once; false if the ticket never held one or already returned it
+        boolean releaseGrant() {
+            return status.compareAndSet(GRANTED, CANCELLED);
+        }
+
+        // A ticket can only be cancelled while pending, so a granted slot is never lost
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return status.compareAndSet(PENDING, CANCELLED) && super.cancel(mayInterruptIfRunning);
+        }
     }
-}
\ No newline at end of file
+}
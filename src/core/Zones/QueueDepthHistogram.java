@@ -0,0 +1,48 @@
+package core.Zones;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of queue lengths. One bucket per length up to OVERFLOW, so percentiles of
+ * the short queues a zone normally sees are exact; longer queues share the last bucket and are
+ * reported at the longest one recorded.
+ */
+class QueueDepthHistogram {
+    private static final int OVERFLOW = 255;
+
+    private final AtomicLongArray buckets;
+    private volatile int max;
+
+    QueueDepthHistogram() {
+        this.buckets = new AtomicLongArray(OVERFLOW + 1);
+    }
+
+    void record(int depth) {
+        buckets.incrementAndGet(Math.min(Math.max(0, depth), OVERFLOW));
+        // A lost race only understates the maximum until the next longer queue
+        if (depth > max) max = depth;
+    }
+
+    int getMaxDepth() {
+        return max;
+    }
+
+    /** Queue length at the given percentile (0-100) of the recorded ones; 0 before any. */
+    int getPercentileDepth(double percentile) {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        double rank = Math.max(1.0, Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < OVERFLOW; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i;
+        }
+        return max;
+    }
+}
@@ -0,0 +1,170 @@
+package core.Zones;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import core.metrics.LatencyHistogram;
+
+/**
+ * Counters recorded by a BufferZone. Wait times and throughput are lock-free; queue length and
+ * occupancy are integrated over time under a short monitor so utilization can be derived.
+ */
+public class ZoneMetrics {
+    private final String zoneName;
+    private final long createdAt;
+
+    private final LatencyHistogram waitTimes;
+    private final QueueDepthHistogram queueSamples;
+    private final LongAdder arrivals;
+    private final LongAdder entries;
+    private final LongAdder exits;
+    private final LongAdder abandoned;
+
+    private int capacity;
+    private int waiting;
+    private int occupied;
+    private int maxQueue;
+    private long lastChange;
+    private long occupancyIntegral;
+    private long queueIntegral;
+    private long capacityIntegral;
+
+    public ZoneMetrics(String zoneName, int capacity) {
+        this.zoneName = zoneName;
+        this.capacity = capacity;
+        this.createdAt = System.nanoTime();
+        this.lastChange = createdAt;
+
+        this.waitTimes = new LatencyHistogram();
+        this.queueSamples = new QueueDepthHistogram();
+        this.arrivals = new LongAdder();
+        this.entries = new LongAdder();
+        this.exits = new LongAdder();
+        this.abandoned = new LongAdder();
+    }
+
+    private void advance(long now) {
+        long dt = now - lastChange;
+        if (dt > 0) {
+            occupancyIntegral += occupied * dt;
+            queueIntegral += waiting * dt;
+            capacityIntegral += capacity * dt;
+            lastChange = now;
+        }
+    }
+
+    void onArrive(long now) {
+        arrivals.increment();
+        int depth;
+        synchronized (this) {
+            advance(now);
+            depth = waiting++;
+            if (waiting > maxQueue) maxQueue = waiting;
+        }
+        // Queue depth seen by the arriving thread, not counting itself
+        queueSamples.record(depth);
+    }
+
+    void onAcquire(long arrivedAt, long now) {
+        waitTimes.record(now - arrivedAt);
+        entries.increment();
+        synchronized (this) {
+            advance(now);
+            waiting--;
+            occupied++;
+        }
+    }
+
+    void onAbandon(long now) {
+        abandoned.increment();
+        synchronized (this) {
+            advance(now);
+            waiting--;
+        }
+    }
+
+    void onRelease(long now) {
+        exits.increment();
+        synchronized (this) {
+            advance(now);
+            if (occupied > 0) occupied--;
+        }
+    }
+
+    synchronized void onCapacityChange(int newCapacity, long now) {
+        advance(now);
+        capacity = newCapacity;
+    }
+
+    public synchronized double getUtilization() {
+        advance(System.nanoTime());
+        return capacityIntegral > 0 ? (double) occupancyIntegral / capacityIntegral : 0.0;
+    }
+
+    public LatencyHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    public Snapshot snapshot() {
+        long now = System.nanoTime();
+        Snapshot s = new Snapshot();
+        s.zoneName = zoneName;
+        s.arrivals = arrivals.sum();
+        s.entries = entries.sum();
+        s.exits = exits.sum();
+        s.abandoned = abandoned.sum();
+        s.meanWaitMs = waitTimes.getMeanNanos() / 1e6;
+        s.p50WaitMs = waitTimes.getPercentileNanos(50) / 1e6;
+        s.p90WaitMs = waitTimes.getPercentileNanos(90) / 1e6;
+        s.p99WaitMs = waitTimes.getPercentileNanos(99) / 1e6;
+        s.maxWaitMs = waitTimes.getMaxNanos() / 1e6;
+        s.p90QueueAtArrival = queueSamples.getPercentileDepth(90);
+        s.elapsedSeconds = (now - createdAt) / 1e9;
+
+        synchronized (this) {
+            advance(now);
+            s.capacity = capacity;
+            s.waiting = waiting;
+            s.occupied = occupied;
+            s.maxQueue = maxQueue;
+            long elapsed = now - createdAt;
+            s.avgQueue = elapsed > 0 ? (double) queueIntegral / elapsed : 0.0;
+            s.avgOccupancy = elapsed > 0 ? (double) occupancyIntegral / elapsed : 0.0;
+            s.utilization = capacityIntegral > 0 ? (double) occupancyIntegral / capacityIntegral : 0.0;
+        }
+        s.throughputPerMinute = s.elapsedSeconds > 0 ? s.exits * 60.0 / s.elapsedSeconds : 0.0;
+        return s;
+    }
+
+    /** Point-in-time copy of the metrics, safe to hand to the UI or print. */
+    public static class Snapshot {
+        public String zoneName;
+        public int capacity;
+        public int waiting;
+        public int occupied;
+        public int maxQueue;
+        public long arrivals;
+        public long entries;
+        public long exits;
+        public long abandoned;
+        /** Queue length, in requests, that nine in ten arrivals found ahead of them. */
+        public int p90QueueAtArrival;
+        public double avgQueue;
+        public double avgOccupancy;
+        public double utilization;
+        public double meanWaitMs;
+        public double p50WaitMs;
+        public double p90WaitMs;
+        public double p99WaitMs;
+        public double maxWaitMs;
+        public double throughputPerMinute;
+        public double elapsedSeconds;
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d/%d busy, %d queued (avg %.1f, max %d), %.1f%% util, "
+                            + "%d done (%.1f/min), wait p50=%.0fms p90=%.0fms p99=%.0fms max=%.0fms",
+                    zoneName, occupied, capacity, waiting, avgQueue, maxQueue, utilization * 100.0,
+                    exits, throughputPerMinute, p50WaitMs, p90WaitMs, p99WaitMs, maxWaitMs);
+        }
+    }
+}
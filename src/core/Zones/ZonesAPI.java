@@ -1,17 +1,24 @@
 package core.Zones;
 
+import java.util.List;
+
 import Facility.Facility;
+import factory.production.ProductionStats;
 import factory.production.Workstations;
 
 public class ZonesAPI {
     Facility bathroom;
     Facility breakroom;
+    List<String> bathroomEndpoints;
+    List<String> breakroomEndpoints;
     Workstations workstations;
+    final ProductionStats productionStats;
 
     public ZonesAPI() {
         this.workstations = null;
         this.bathroom = null;
         this.breakroom = null;
+        this.productionStats = new ProductionStats();
     }
 
     public void setBathroom(Facility bathroom) {
@@ -22,7 +29,34 @@ public class ZonesAPI {
         this.breakroom = breakroom;
     }
 
-    // ADD THIS
+    /** Null unless the bathroom runs in-process; workers then connect to the TCP server instead. */
+    public Facility getBathroom() {
+        return bathroom;
+    }
+
+    /** Null unless the breakroom runs in-process; workers then connect to the TCP server instead. */
+    public Facility getBreakroom() {
+        return breakroom;
+    }
+
+    public void setBathroomEndpoints(List<String> bathroomEndpoints) {
+        this.bathroomEndpoints = bathroomEndpoints;
+    }
+
+    public void setBreakroomEndpoints(List<String> breakroomEndpoints) {
+        this.breakroomEndpoints = breakroomEndpoints;
+    }
+
+    /** host:port of the bathroom servers this factory started, or null to use the facility.* properties. */
+    public List<String> getBathroomEndpoints() {
+        return bathroomEndpoints;
+    }
+
+    /** host:port of the breakroom servers this factory started, or null to use the facility.* properties. */
+    public List<String> getBreakroomEndpoints() {
+        return breakroomEndpoints;
+    }
+
     public void setWorkstations(Workstations workstations) {
         this.workstations = workstations;
     }
@@ -30,4 +64,8 @@ public class ZonesAPI {
     public Workstations getWorkstations() {
         return workstations;
     }
+
+    public ProductionStats getProductionStats() {
+        return productionStats;
+    }
 }
@@ -0,0 +1,62 @@
+package core.agents;
+
+import java.util.EnumMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How many agents there are of each type, and how many are in each location and state, kept
+ * up to date by the agents as they publish transitions. Reading a count is a LongAdder sum, the
+ * same at any population and any rate; between transitions keeping it costs nothing.
+ */
+public final class AgentCensus {
+    private final EnumMap<AgentType, LongAdder> byType = counters(AgentType.class);
+    private final EnumMap<AgentLocation, LongAdder> byLocation = counters(AgentLocation.class);
+    private final EnumMap<AgentState, LongAdder> byState = counters(AgentState.class);
+
+    AgentCensus() {
+    }
+
+    private static <E extends Enum<E>> EnumMap<E, LongAdder> counters(Class<E> type) {
+        EnumMap<E, LongAdder> counters = new EnumMap<>(type);
+        for (E value : type.getEnumConstants()) {
+            counters.put(value, new LongAdder());
+        }
+        return counters;
+    }
+
+    void added(AgentType type, AgentStatus status) {
+        byType.get(type).increment();
+        add(byLocation, status.getLocation(), 1);
+        add(byState, status.getState(), 1);
+    }
+
+    void moved(AgentStatus from, AgentStatus to) {
+        if (from.getLocation() != to.getLocation()) {
+            add(byLocation, from.getLocation(), -1);
+            add(byLocation, to.getLocation(), 1);
+        }
+        if (from.getState() != to.getState()) {
+            add(byState, from.getState(), -1);
+            add(byState, to.getState(), 1);
+        }
+    }
+
+    // Agents pass through a null location or state now and then; those are simply not counted
+    private static <E extends Enum<E>> void add(EnumMap<E, LongAdder> counters, E key, int delta) {
+        if (key != null) {
+            counters.get(key).add(delta);
+        }
+    }
+
+    public long count(AgentType type) {
+        return byType.get(type).sum();
+    }
+
+    public long count(AgentLocation location) {
+        return byLocation.get(location).sum();
+    }
+
+    public long count(AgentState state) {
+        return byState.get(state).sum();
+    }
+}
@@ -0,0 +1,49 @@
+package core.agents;
+
+/**
+ * What an agent is doing at one moment: its state, location, activity description and order
+ * progress, published together by BaseAgent so a reader on another thread never sees a state
+ * from one step next to a location from another. The version goes up by one per publication.
+ */
+public final class AgentStatus {
+    private final long version;
+    private final AgentState state;
+    private final AgentLocation location;
+    private final String stateDescriptor;
+    private final int orderProgress;
+
+    AgentStatus(long version, AgentState state, AgentLocation location, String stateDescriptor, int orderProgress) {
+        this.version = version;
+        this.state = state;
+        this.location = location;
+        this.stateDescriptor = stateDescriptor;
+        this.orderProgress = orderProgress;
+    }
+
+    boolean matches(AgentState state, AgentLocation location, String stateDescriptor, int orderProgress) {
+        // Descriptors are usually the same literal when nothing changed, so identity settles most
+        return this.state == state && this.location == location && this.orderProgress == orderProgress
+                && (this.stateDescriptor == stateDescriptor
+                        || (stateDescriptor != null && stateDescriptor.equals(this.stateDescriptor)));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public AgentState getState() {
+        return state;
+    }
+
+    public AgentLocation getLocation() {
+        return location;
+    }
+
+    public String getStateDescriptor() {
+        return stateDescriptor;
+    }
+
+    public int getOrderProgress() {
+        return orderProgress;
+    }
+}
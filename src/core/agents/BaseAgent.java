@@ -1,9 +1,22 @@
 package core.agents;
 
 import java.util.Random;
-
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * The fields below belong to the agent's own thread. Other threads that need to change them,
+ * such as facility callbacks, hand the change to postUpdate and the agent applies it on its own
+ * thread. Other threads read getStatus() instead: an immutable AgentStatus republished with one
+ * volatile store whenever state, location, descriptor or order progress change, read with one
+ * volatile load, with no lock on either side. Each publication also moves the agent between the
+ * census counters.
+ */
 public abstract class BaseAgent extends Thread{
+    private static final AgentCensus CENSUS = new AgentCensus();
+
     protected final AgentType type;
     protected final String threadID;
     protected static final Random random = new Random();
@@ -17,6 +30,12 @@ public abstract class BaseAgent extends Thread{
 
     protected String stateDescriptor;
 
+    // Written only by the agent's thread, read as a volatile by getStatus
+    private volatile AgentStatus status;
+    // Changes posted by other threads, applied by the agent's thread while it pauses
+    private final ConcurrentLinkedQueue<Runnable> updates = new ConcurrentLinkedQueue<>();
+    private volatile boolean wakeRequested;
+
     public BaseAgent(AgentType type, String threadID, AgentLocation location) {
         this.type = type;
         this.threadID = threadID;
@@ -26,6 +45,8 @@ public abstract class BaseAgent extends Thread{
         this.breaksSinceShift = 0;
         this.sleepTime = 0;
         this.stateDescriptor = "";
+        this.status = new AgentStatus(0, state, location, stateDescriptor, 0);
+        CENSUS.added(type, status);
 
         System.out.println("Agent "+threadID+" ("+type+"): "+" has been started");
     }
@@ -34,15 +55,99 @@ public abstract class BaseAgent extends Thread{
 
     @Override
     public void run() {
+        // Picks up whatever the subclass constructor changed
+        publishStatus();
         while(!Thread.interrupted()){
             performLocationBehavior();
+            publishStatus();
+            pause(sleepTime);
+            processNextState();
+            publishStatus();
+        }
+    }
+
+    /**
+     * Publishes the current state, location, descriptor and order progress as one AgentStatus
+     * if any of them changed; an unchanged step stores nothing. run() calls it after every step;
+     * code that changes them outside a step, or is about to block in the middle of one, calls it
+     * itself. Only the agent's thread may call it, which makes it the single writer: every record
+     * comes from one thread's view of its own fields and each transition reaches the census once.
+     */
+    protected final void publishStatus() {
+        AgentStatus current = status;
+        int orderProgress = getOrderProgress();
+        if (current.matches(state, location, stateDescriptor, orderProgress)) return;
+        AgentStatus next = new AgentStatus(current.getVersion() + 1, state, location, stateDescriptor, orderProgress);
+        status = next;
+        CENSUS.moved(current, next);
+    }
+
+    /**
+     * Runs update on the agent's thread and publishes the result: right away when called from
+     * that thread, otherwise at the agent's next pause, which wakes to apply it and then carries
+     * on for the rest of its time. Updates run in the order they were posted and must not block.
+     */
+    protected final void postUpdate(Runnable update) {
+        if (Thread.currentThread() == this) {
+            update.run();
+            publishStatus();
+            return;
+        }
+        updates.add(update);
+        LockSupport.unpark(this);
+    }
+
+    /** Ends the agent's current pause early, or its next one if it is not pausing; any thread. */
+    public final void wake() {
+        wakeRequested = true;
+        LockSupport.unpark(this);
+    }
+
+    // Waits out the step's sleep time, applying posted updates as they arrive
+    private void pause(long millis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (true) {
+            applyUpdates();
+            if (wakeRequested) {
+                wakeRequested = false;
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                System.out.println(threadID + " interrupted while pausing");
+                return;
+            }
+        }
+    }
+
+    private void applyUpdates() {
+        Runnable update = updates.poll();
+        if (update == null) return;
+        for (; update != null; update = updates.poll()) {
             try {
-                Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                update.run();
+            } catch (RuntimeException e) {
+                System.out.println(threadID + ": posted update failed: " + e);
             }
-            processNextState();
         }
+        publishStatus();
+    }
+
+    /** Units of the current order done so far; 0 for agents that do not produce. */
+    protected int getOrderProgress() {
+        return 0;
+    }
+
+    /** Agents per type, location and state, across every agent in this process. */
+    public static AgentCensus census() {
+        return CENSUS;
+    }
+
+    /** Everything another thread should read about this agent, consistent with itself. */
+    public AgentStatus getStatus() {
+        return status;
     }
 
     protected abstract void processNextState();
@@ -53,7 +158,7 @@ public abstract class BaseAgent extends Thread{
     }
 
     public void setAgentLocation(AgentLocation location) {
-        this.location = location;
+        postUpdate(() -> this.location = location);
     }
     
     public AgentState getAgentState(){
@@ -61,7 +166,7 @@ public abstract class BaseAgent extends Thread{
     }
 
     public void setAgentState(AgentState state) {
-        this.state = state;
+        postUpdate(() -> this.state = state);
     }
 
     public String getThreadID(){
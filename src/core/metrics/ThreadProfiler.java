@@ -0,0 +1,293 @@
+package core.metrics;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CPU time and lock contention for a fixed list of threads, from ThreadMXBean. Each sample()
+ * reads every thread's CPU time and a ThreadInfo with a short stack; a thread found blocked or
+ * parked on a lock is charged the time since the previous sample, both to that lock and to the
+ * Site whose frame is on its stack. Lock times are therefore statistical, one sample period per
+ * observation, and a sample costs the same whether or not anything is contended (about 5 us per
+ * thread). Samples are skipped while the last one cost more than 1% of the time since it, so
+ * the profiler can stay on with any number of threads. Blocked and waited counts and times are
+ * the JVM's exact per-thread totals.
+ *
+ * Not thread-safe: sample() and report() belong to one thread.
+ */
+public class ThreadProfiler {
+    private static final int STACK_DEPTH = 12;
+    // Distinct locks remembered; past this the least contended is forgotten
+    private static final int MAX_LOCKS = 256;
+    // Most of the elapsed time sampling may take
+    private static final double BUDGET = 0.01;
+
+    /** Where in the simulation a thread waits, by the first frame on its stack that matches. */
+    public enum Site {
+        WAREHOUSE("Warehouse.lock", "factory.warehouse.Warehouse"),
+        INVENTORY("InventoryAgent.lock", "factory.agents.InventoryAgent"),
+        WORKSTATIONS("Workstations", "factory.production.", "core.Zones.BufferZone"),
+        OTHER("Other");
+
+        private final String label;
+        private final String[] classPrefixes;
+
+        Site(String label, String... classPrefixes) {
+            this.label = label;
+            this.classPrefixes = classPrefixes;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        static Site of(StackTraceElement[] stack) {
+            for (StackTraceElement frame : stack) {
+                for (Site site : values()) {
+                    for (String prefix : site.classPrefixes) {
+                        if (frame.getClassName().startsWith(prefix)) return site;
+                    }
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    private final ThreadMXBean mx;
+    private final Thread[] threads;
+    private final long[] ids;
+    private final boolean cpuTime;
+    private final boolean contention;
+
+    private final long[] cpuAtReport;
+    private final long[][] siteNanos;
+    private final ThreadInfo[] latest;
+    private final Map<String, ContendedLock> locks = new HashMap<>();
+    private long lastSampleNanos;
+    private long lastSampleCostNanos;
+    private long lastReportNanos;
+
+    public ThreadProfiler(List<? extends Thread> threads) {
+        this.mx = ManagementFactory.getThreadMXBean();
+        this.threads = threads.toArray(new Thread[0]);
+        this.ids = new long[this.threads.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.threads[i].getId();
+        }
+        this.cpuTime = mx.isThreadCpuTimeSupported();
+        if (cpuTime && !mx.isThreadCpuTimeEnabled()) {
+            mx.setThreadCpuTimeEnabled(true);
+        }
+        this.contention = mx.isThreadContentionMonitoringSupported();
+        if (contention && !mx.isThreadContentionMonitoringEnabled()) {
+            mx.setThreadContentionMonitoringEnabled(true);
+        }
+        this.cpuAtReport = cpuTimes();
+        this.siteNanos = new long[this.threads.length][Site.values().length];
+        this.latest = new ThreadInfo[this.threads.length];
+        this.lastSampleNanos = System.nanoTime();
+        this.lastReportNanos = lastSampleNanos;
+    }
+
+    /** Takes a sample, unless that would go over budget; returns whether it did. */
+    public boolean sample() {
+        long now = System.nanoTime();
+        long elapsed = now - lastSampleNanos;
+        if (elapsed < lastSampleCostNanos / BUDGET) return false;
+        lastSampleNanos = now;
+        ThreadInfo[] infos = mx.getThreadInfo(ids, STACK_DEPTH);
+        for (int i = 0; i < infos.length; i++) {
+            ThreadInfo info = infos[i];
+            latest[i] = info;
+            // Not started yet or already gone; sleeping threads have no lock
+            if (info == null || info.getLockInfo() == null) continue;
+            Thread.State state = info.getThreadState();
+            if (state != Thread.State.BLOCKED && state != Thread.State.WAITING && state != Thread.State.TIMED_WAITING) continue;
+
+            Site site = Site.of(info.getStackTrace());
+            siteNanos[i][site.ordinal()] += elapsed;
+            charge(info.getLockInfo(), site, info.getLockOwnerName(), elapsed);
+        }
+        lastSampleCostNanos = System.nanoTime() - now;
+        return true;
+    }
+
+    private void charge(LockInfo lock, Site site, String owner, long nanos) {
+        String key = lock.toString();
+        ContendedLock contended = locks.get(key);
+        if (contended == null) {
+            if (locks.size() >= MAX_LOCKS) {
+                forgetLeastContended();
+            }
+            contended = new ContendedLock(key, site);
+            locks.put(key, contended);
+        }
+        contended.nanos += nanos;
+        contended.observations++;
+        if (owner != null) {
+            contended.lastOwner = owner;
+        }
+    }
+
+    private void forgetLeastContended() {
+        ContendedLock least = null;
+        for (ContendedLock lock : locks.values()) {
+            if (least == null || lock.nanos < least.nanos) least = lock;
+        }
+        locks.remove(least.name);
+    }
+
+    private long[] cpuTimes() {
+        long[] times = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            times[i] = cpuTime ? mx.getThreadCpuTime(ids[i]) : -1;
+        }
+        return times;
+    }
+
+    /** One row per thread as of the last sample; CPU% is averaged since the previous report. */
+    public ThreadSample[] report() {
+        long now = System.nanoTime();
+        long wall = Math.max(1, now - lastReportNanos);
+        lastReportNanos = now;
+        long[] cpu = cpuTimes();
+        ThreadSample[] rows = new ThreadSample[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            double cpuPercent = cpu[i] < 0 || cpuAtReport[i] < 0 ? -1 : 100.0 * (cpu[i] - cpuAtReport[i]) / wall;
+            rows[i] = new ThreadSample(threads[i], latest[i], cpuPercent, contention, siteNanos[i].clone());
+        }
+        System.arraycopy(cpu, 0, cpuAtReport, 0, cpu.length);
+        return rows;
+    }
+
+    /** The locks threads were most often found waiting on, most waited-on first. */
+    public List<ContendedLock> topContended(int limit) {
+        List<ContendedLock> all = new ArrayList<>(locks.size());
+        for (ContendedLock lock : locks.values()) {
+            all.add(lock.copy());
+        }
+        all.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        return all.size() > limit ? new ArrayList<>(all.subList(0, limit)) : all;
+    }
+
+    /** A thread's figures at one report; immutable. */
+    public static final class ThreadSample {
+        private final String name;
+        private final Thread.State state;
+        private final double cpuPercent;
+        private final long blockedCount;
+        private final long blockedMillis;
+        private final long waitedCount;
+        private final long waitedMillis;
+        private final long[] siteNanos;
+        private final String waitingOn;
+
+        ThreadSample(Thread thread, ThreadInfo info, double cpuPercent, boolean contention, long[] siteNanos) {
+            this.name = thread.getName();
+            this.state = info != null ? info.getThreadState() : thread.getState();
+            this.cpuPercent = cpuPercent;
+            this.blockedCount = info != null ? info.getBlockedCount() : 0;
+            this.blockedMillis = info != null && contention ? info.getBlockedTime() : -1;
+            this.waitedCount = info != null ? info.getWaitedCount() : 0;
+            this.waitedMillis = info != null && contention ? info.getWaitedTime() : -1;
+            this.siteNanos = siteNanos;
+            this.waitingOn = waitingOn(info);
+        }
+
+        private static String waitingOn(ThreadInfo info) {
+            if (info == null || info.getLockInfo() == null) return "";
+            String owner = info.getLockOwnerName();
+            return info.getLockName() + (owner != null ? " held by " + owner : "");
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Thread.State getState() {
+            return state;
+        }
+
+        /** -1 where the JVM does not measure thread CPU time. */
+        public double getCpuPercent() {
+            return cpuPercent;
+        }
+
+        public long getBlockedCount() {
+            return blockedCount;
+        }
+
+        /** -1 without contention monitoring. */
+        public long getBlockedMillis() {
+            return blockedMillis;
+        }
+
+        public long getWaitedCount() {
+            return waitedCount;
+        }
+
+        /** Includes sleeps and parks; -1 without contention monitoring. */
+        public long getWaitedMillis() {
+            return waitedMillis;
+        }
+
+        /** Sampled time spent waiting on a lock from site, since profiling started. */
+        public long getSiteMillis(Site site) {
+            return siteNanos[site.ordinal()] / 1_000_000;
+        }
+
+        /** The lock this thread was waiting on at the last sample and who held it, or "". */
+        public String getWaitingOn() {
+            return waitingOn;
+        }
+    }
+
+    public static final class ContendedLock {
+        private final String name;
+        private final Site site;
+        private long nanos;
+        private long observations;
+        private String lastOwner;
+
+        ContendedLock(String name, Site site) {
+            this.name = name;
+            this.site = site;
+        }
+
+        ContendedLock copy() {
+            ContendedLock copy = new ContendedLock(name, site);
+            copy.nanos = nanos;
+            copy.observations = observations;
+            copy.lastOwner = lastOwner;
+            return copy;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Where the first thread found waiting on it was. */
+        public Site getSite() {
+            return site;
+        }
+
+        public long getWaitMillis() {
+            return nanos / 1_000_000;
+        }
+
+        /** Threads found waiting on it, summed over samples. */
+        public long getObservations() {
+            return observations;
+        }
+
+        public String getLastOwner() {
+            return lastOwner;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package core.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-length history of several series sampled together, one row per sample, kept in
+ * primitive ring buffers: recording a row neither allocates nor boxes, and once the store is
+ * full each row overwrites the oldest, so memory stays at capacity x series doubles however long
+ * the run. Rows are written and copied under the store's monitor, so a reader never sees half a
+ * row.
+ */
+public class TimeSeriesStore {
+    private final String[] names;
+    private final long periodMillis;
+    private final int capacity;
+    // [series][slot]; slot next is the oldest once full
+    private final double[][] values;
+    private int next;
+    private int size;
+    private long lastMillis;
+
+    public TimeSeriesStore(long periodMillis, int capacity, String... names) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.names = names.clone();
+        this.periodMillis = periodMillis;
+        this.capacity = capacity;
+        this.values = new double[names.length][capacity];
+    }
+
+    /** Appends one value per series, in the order the series were named. */
+    public synchronized void record(long timeMillis, double[] row) {
+        if (row.length != names.length) {
+            throw new IllegalArgumentException("Expected " + names.length + " values, got " + row.length);
+        }
+        for (int series = 0; series < row.length; series++) {
+            values[series][next] = row[series];
+        }
+        next = next + 1 == capacity ? 0 : next + 1;
+        if (size < capacity) size++;
+        lastMillis = timeMillis;
+    }
+
+    /**
+     * Copies the newest values of a series, at most limit and out.length of them, into the start
+     * of out, oldest first; returns how many were copied.
+     */
+    public synchronized int copyRecent(int series, double[] out, int limit) {
+        int count = Math.min(size, Math.min(limit, out.length));
+        int start = next - count;
+        if (start >= 0) {
+            System.arraycopy(values[series], start, out, 0, count);
+        } else {
+            int wrapped = -start;
+            System.arraycopy(values[series], capacity - wrapped, out, 0, wrapped);
+            System.arraycopy(values[series], 0, out, wrapped, count - wrapped);
+        }
+        return count;
+    }
+
+    /** The newest value of a series, or NaN before the first sample. */
+    public synchronized double latest(int series) {
+        if (size == 0) return Double.NaN;
+        return values[series][next == 0 ? capacity - 1 : next - 1];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** When the newest row was recorded, in System.currentTimeMillis terms; 0 before any. */
+    public synchronized long getLastMillis() {
+        return lastMillis;
+    }
+
+    public int getSeriesCount() {
+        return names.length;
+    }
+
+    public String getName(int series) {
+        return names[series];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSeriesStore" + Arrays.toString(names) + " " + size() + "/" + capacity;
+    }
+}
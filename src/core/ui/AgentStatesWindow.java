@@ -2,38 +2,41 @@ package core.ui;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableColumnModel;
 import java.awt.*;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import core.agents.BaseAgent;
 import core.agents.AgentState; // Ensure you have this import
 
-public class AgentStatesWindow extends JFrame implements Runnable {
-
-    private final List<BaseAgent> agents;
-    private final DefaultTableModel tableModel;
+/**
+ * Live table of every agent. Each refresh only copies the rows currently on screen out of the
+ * latest snapshot and only repaints the ones that changed (see AgentTableModel), so the cost per
+ * tick does not grow with the number of agents.
+ */
+public class AgentStatesWindow extends JFrame implements UIRefreshCoordinator.View {
+    private static final long REFRESH_MILLIS = 100;
+    private static final Font STATE_FONT = new Font("Segoe UI", Font.BOLD, 12);
+    private static final Color WORKING_COLOR = new Color(0, 150, 0);
+    private static final Color ON_BREAK_COLOR = new Color(200, 100, 0);
+
+    private final AgentTableModel tableModel;
     private final JTable table;
     private volatile boolean running = true;
+    private volatile SimulationSnapshot snapshot;
+    // Set while a refresh is queued on the EDT, so a busy EDT never gets a backlog
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
 
     public AgentStatesWindow(List<BaseAgent> agents) {
-        this.agents = agents;
 
         setTitle("Factory Simulation Monitor");
         setSize(1000, 500); // Made it slightly wider for descriptors
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
 
-        // 1. Setup Table Data Structure
-        String[] columnNames = {"Agent ID", "Type", "State", "Location", "Activity Description"};
-
-        // We make cells non-editable
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // 1. Setup Table Data Structure (cells are non-editable)
+        snapshot = SimulationSnapshot.take(0, agents.toArray(new BaseAgent[0]));
+        tableModel = new AgentTableModel(snapshot);
 
         table = new JTable(tableModel);
         table.setFont(new Font("Segoe UI", Font.PLAIN, 14));
@@ -46,6 +49,8 @@ public class AgentStatesWindow extends JFrame implements Runnable {
 
         // 3. Layout
         JScrollPane scrollPane = new JScrollPane(table);
+        // Rows scrolled into view may be stale; bring them up to date straight away
+        scrollPane.getViewport().addChangeListener(e -> refreshVisibleRows());
         add(scrollPane, BorderLayout.CENTER);
 
         JLabel title = new JLabel("Real-Time Agent Status", SwingConstants.CENTER);
@@ -81,26 +86,25 @@ public class AgentStatesWindow extends JFrame implements Runnable {
 
                 // Center the text
                 setHorizontalAlignment(JLabel.CENTER);
-                setFont(new Font("Segoe UI", Font.BOLD, 12));
+                setFont(STATE_FONT);
 
                 // Color Logic based on AgentState
-                if (value != null) {
-                    String stateStr = value.toString();
-                    switch (stateStr) {
-                        case "WORKING":
-                            c.setForeground(new Color(0, 150, 0)); // Dark Green
+                if (value instanceof AgentState) {
+                    switch ((AgentState) value) {
+                        case WORKING:
+                            c.setForeground(WORKING_COLOR); // Dark Green
                             break;
-                        case "WAITING":
+                        case WAITING:
                             c.setForeground(Color.RED); // Alert Red
                             break;
-                        case "MOVING":
+                        case MOVING:
                             c.setForeground(Color.BLUE);
                             break;
-                        case "IDLE":
+                        case IDLE:
                             c.setForeground(Color.GRAY);
                             break;
-                        case "FIXING":
-                            c.setForeground(new Color(200, 100, 0)); // Orange
+                        case ON_BREAK:
+                            c.setForeground(ON_BREAK_COLOR); // Orange
                             break;
                         default:
                             c.setForeground(Color.BLACK);
@@ -112,48 +116,32 @@ public class AgentStatesWindow extends JFrame implements Runnable {
     }
 
     @Override
-    public void run() {
-        while (running) {
-            try {
-                SwingUtilities.invokeLater(this::updateTable);
-                // 100ms is smoother for reading text than 50ms
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                running = false;
-                break;
-            }
+    public void refresh(SimulationSnapshot snapshot) {
+        if (!running) return;
+        this.snapshot = snapshot;
+        if (refreshPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                refreshPending.set(false);
+                refreshVisibleRows();
+            });
         }
     }
 
-    private void updateTable() {
-        // IMPROVEMENT: Don't delete rows! Update existing ones to prevent flickering.
-
-        // 1. If table is empty, fill it first
-        if (tableModel.getRowCount() != agents.size()) {
-            tableModel.setRowCount(0);
-            for (BaseAgent agent : agents) {
-                tableModel.addRow(new Object[]{
-                        agent.getThreadID(),
-                        agent.getAgentType(),
-                        agent.getAgentState(),
-                        agent.getLocation(),
-                        agent.getStateDescriptor()
-                });
-            }
-        }
-        // 2. Update existing rows
-        else {
-            for (int i = 0; i < agents.size(); i++) {
-                BaseAgent agent = agents.get(i);
-
-                // Only update specific cells
-                tableModel.setValueAt(agent.getThreadID(), i, 0);
-                tableModel.setValueAt(agent.getAgentType(), i, 1);
-                tableModel.setValueAt(agent.getAgentState(), i, 2);
-                tableModel.setValueAt(agent.getLocation(), i, 3);
-                tableModel.setValueAt(agent.getStateDescriptor(), i, 4);
-            }
-        }
+    @Override
+    public long getRefreshMillis() {
+        // 100ms is smoother for reading text than 50ms
+        return REFRESH_MILLIS;
+    }
+
+    // EDT only
+    private void refreshVisibleRows() {
+        Rectangle view = table.getVisibleRect();
+        if (view.isEmpty()) return;
+        int first = table.rowAtPoint(view.getLocation());
+        if (first < 0) return;
+        int last = table.rowAtPoint(new Point(view.x, view.y + view.height - 1));
+        if (last < 0) last = tableModel.getRowCount() - 1;
+        tableModel.refresh(snapshot, first, last);
     }
 
     public void stop() {
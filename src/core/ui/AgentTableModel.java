@@ -0,0 +1,105 @@
+package core.ui;
+
+import javax.swing.table.AbstractTableModel;
+
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import core.agents.AgentType;
+
+/**
+ * Read-only table over a fixed list of agents. Cells are served from a per-row copy taken from
+ * SimulationSnapshots, not from the agents themselves; refresh() copies only the rows it is given
+ * and fires one fireTableRowsUpdated per run of consecutive rows that actually changed, so rows
+ * that are idle or off screen cost nothing. EDT only.
+ */
+class AgentTableModel extends AbstractTableModel {
+    static final String[] COLUMNS = {"Agent ID", "Type", "State", "Location", "Activity Description"};
+
+    private final String[] ids;
+    private final AgentType[] types;
+    private final AgentState[] states;
+    private final AgentLocation[] locations;
+    private final String[] descriptors;
+
+    AgentTableModel(SimulationSnapshot initial) {
+        int rows = initial.size();
+        this.ids = new String[rows];
+        this.types = new AgentType[rows];
+        this.states = new AgentState[rows];
+        this.locations = new AgentLocation[rows];
+        this.descriptors = new String[rows];
+        for (int row = 0; row < rows; row++) {
+            ids[row] = initial.agent(row).getThreadID();
+            types[row] = initial.agent(row).getAgentType();
+            states[row] = initial.state(row);
+            locations[row] = initial.location(row);
+            descriptors[row] = initial.descriptor(row);
+        }
+    }
+
+    /** Copies rows first to last, inclusive, from snapshot; returns how many changed. */
+    int refresh(SimulationSnapshot snapshot, int first, int last) {
+        int rows = ids.length;
+        int changed = 0;
+        int runStart = -1;
+        for (int row = Math.max(0, first); row <= last && row < rows; row++) {
+            if (update(snapshot, row)) {
+                changed++;
+                if (runStart < 0) runStart = row;
+            } else if (runStart >= 0) {
+                fireTableRowsUpdated(runStart, row - 1);
+                runStart = -1;
+            }
+        }
+        if (runStart >= 0) {
+            fireTableRowsUpdated(runStart, Math.min(last, rows - 1));
+        }
+        return changed;
+    }
+
+    private boolean update(SimulationSnapshot snapshot, int row) {
+        AgentState state = snapshot.state(row);
+        AgentLocation location = snapshot.location(row);
+        String descriptor = snapshot.descriptor(row);
+        // Descriptors are mostly the same literal, so the identity check usually settles it
+        if (state == states[row] && location == locations[row]
+                && (descriptor == descriptors[row] || (descriptor != null && descriptor.equals(descriptors[row])))) {
+            return false;
+        }
+        states[row] = state;
+        locations[row] = location;
+        descriptors[row] = descriptor;
+        return true;
+    }
+
+    @Override
+    public int getRowCount() {
+        return ids.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            case 0:
+                return ids[row];
+            case 1:
+                return types[row];
+            case 2:
+                return states[row];
+            case 3:
+                return locations[row];
+            default:
+                return descriptors[row];
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package core.ui;
+
+import javax.swing.*;
+import java.awt.*;
+import core.metrics.TimeSeriesStore;
+
+/**
+ * One line chart per series of a TimeSeriesStore, stacked, over a selectable span up to the
+ * store's whole history. Newest samples are at the right edge. When a span holds more samples
+ * than the chart is pixels wide, each pixel column draws the min-max range of its samples, so
+ * spikes survive the squeeze and a paint costs the same for a minute as for hours.
+ */
+public class ChartsWindow extends JFrame implements UIRefreshCoordinator.View {
+    private static final long REFRESH_MILLIS = 1000;
+    private static final Font TITLE_FONT = new Font("SansSerif", Font.BOLD, 12);
+    private static final Font AXIS_FONT = new Font("SansSerif", Font.PLAIN, 10);
+    private static final Color GRID_COLOR = new Color(225, 225, 225);
+    private static final Color[] LINE_COLORS = {
+            new Color(0, 120, 200), new Color(200, 120, 0), new Color(150, 60, 170),
+            new Color(0, 150, 0), new Color(60, 179, 113)};
+    private static final Stroke LINE_STROKE = new BasicStroke(1.5f);
+    private static final int MARGIN_LEFT = 55;
+    private static final int MARGIN_RIGHT = 15;
+    private static final int MARGIN_TOP = 20;
+    private static final int MARGIN_BOTTOM = 18;
+
+    private static final String[] SPAN_LABELS = {"5 minutes", "15 minutes", "1 hour", "4 hours", "All"};
+    private static final int[] SPAN_SECONDS = {300, 900, 3600, 14400, Integer.MAX_VALUE};
+
+    private final TimeSeriesStore store;
+    private final ChartPanel panel;
+    private final JComboBox<String> spanBox;
+    private volatile boolean running = true;
+    // EDT only; sized for the whole history so painting never allocates
+    private final double[] buffer;
+
+    public ChartsWindow(TimeSeriesStore store) {
+        this.store = store;
+        this.buffer = new double[store.getCapacity()];
+
+        setTitle("Factory Trends");
+        setSize(900, 850);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLayout(new BorderLayout());
+
+        JPanel header = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JLabel title = new JLabel("Factory Trends");
+        title.setFont(new Font("SansSerif", Font.BOLD, 16));
+        header.add(title);
+        header.add(Box.createHorizontalStrut(20));
+        header.add(new JLabel("Show last:"));
+        spanBox = new JComboBox<>(SPAN_LABELS);
+        spanBox.setSelectedIndex(1);
+        header.add(spanBox);
+        add(header, BorderLayout.NORTH);
+
+        panel = new ChartPanel();
+        spanBox.addActionListener(e -> panel.repaint());
+        add(panel, BorderLayout.CENTER);
+
+        setVisible(true);
+    }
+
+    // The store fills on its own thread; the coordinator only sets the pace of repaints
+    @Override
+    public void refresh(SimulationSnapshot snapshot) {
+        if (running) {
+            panel.repaint();
+        }
+    }
+
+    @Override
+    public long getRefreshMillis() {
+        return REFRESH_MILLIS;
+    }
+
+    public void stop() {
+        running = false;
+        dispose();
+    }
+
+    private int spanSamples() {
+        long seconds = SPAN_SECONDS[Math.max(0, spanBox.getSelectedIndex())];
+        long samples = seconds * 1000 / Math.max(1, store.getPeriodMillis());
+        return (int) Math.min(samples, store.getCapacity());
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "-";
+        return Math.abs(value) >= 100 || value == Math.rint(value)
+                ? String.format("%.0f", value) : String.format("%.1f", value);
+    }
+
+    private static String formatSpan(long seconds) {
+        if (seconds >= 3600) return String.format("%.1f h", seconds / 3600.0);
+        if (seconds >= 60) return (seconds / 60) + " min";
+        return seconds + " s";
+    }
+
+    private class ChartPanel extends JPanel {
+        ChartPanel() {
+            setBackground(Color.WHITE);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+            int charts = store.getSeriesCount();
+            int height = getHeight() / Math.max(1, charts);
+            int span = spanSamples();
+            for (int series = 0; series < charts; series++) {
+                int count = store.copyRecent(series, buffer, span);
+                drawChart(g2d, series, series * height, getWidth(), height, span, count);
+            }
+        }
+
+        // buffer holds the series' newest `count` values, oldest first
+        private void drawChart(Graphics2D g2d, int series, int y, int width, int height, int span, int count) {
+            int left = MARGIN_LEFT;
+            int top = y + MARGIN_TOP;
+            int plotWidth = Math.max(1, width - MARGIN_LEFT - MARGIN_RIGHT);
+            int plotHeight = Math.max(1, height - MARGIN_TOP - MARGIN_BOTTOM);
+
+            double max = 0;
+            for (int i = 0; i < count; i++) {
+                max = Math.max(max, buffer[i]);
+            }
+            // Round the scale up so the top gridline is a readable number
+            double scale = max <= 0 ? 1 : niceCeiling(max);
+
+            g2d.setColor(GRID_COLOR);
+            for (int line = 0; line <= 4; line++) {
+                int gy = top + plotHeight - line * plotHeight / 4;
+                g2d.drawLine(left, gy, left + plotWidth, gy);
+            }
+            g2d.setColor(Color.GRAY);
+            g2d.drawRect(left, top, plotWidth, plotHeight);
+            g2d.setFont(AXIS_FONT);
+            g2d.drawString(format(scale), 5, top + 8);
+            g2d.drawString("0", 5, top + plotHeight);
+            long spanSeconds = (long) span * store.getPeriodMillis() / 1000;
+            g2d.drawString("-" + formatSpan(spanSeconds), left, top + plotHeight + 13);
+            g2d.drawString("now", left + plotWidth - 18, top + plotHeight + 13);
+
+            g2d.setColor(Color.BLACK);
+            g2d.setFont(TITLE_FONT);
+            double latest = count > 0 ? buffer[count - 1] : Double.NaN;
+            g2d.drawString(store.getName(series) + "   now " + format(latest) + "   peak " + format(max), left, y + 14);
+
+            if (count == 0) return;
+            g2d.setColor(LINE_COLORS[series % LINE_COLORS.length]);
+            g2d.setStroke(LINE_STROKE);
+            // A sample's x is the right edge minus its age; consecutive samples that land on the
+            // same pixel column are drawn as one vertical min-max stroke
+            int prevX = -1;
+            int prevY = 0;
+            int column = -1;
+            double low = 0;
+            double high = 0;
+            double first = 0;
+            double last = 0;
+            for (int i = 0; i <= count; i++) {
+                int px = i == count ? -1
+                        : left + plotWidth - (int) ((long) (count - 1 - i) * plotWidth / Math.max(1, span - 1));
+                if (px != column && column >= 0) {
+                    int yFirst = toY(first, top, plotHeight, scale);
+                    if (prevX >= 0) {
+                        g2d.drawLine(prevX, prevY, column, yFirst);
+                    }
+                    int yLow = toY(low, top, plotHeight, scale);
+                    int yHigh = toY(high, top, plotHeight, scale);
+                    if (yLow != yHigh) {
+                        g2d.drawLine(column, yHigh, column, yLow);
+                    }
+                    prevX = column;
+                    prevY = toY(last, top, plotHeight, scale);
+                }
+                if (i == count) break;
+                double value = buffer[i];
+                if (px != column) {
+                    column = px;
+                    low = value;
+                    high = value;
+                    first = value;
+                } else {
+                    low = Math.min(low, value);
+                    high = Math.max(high, value);
+                }
+                last = value;
+            }
+        }
+
+        private int toY(double value, int top, int plotHeight, double scale) {
+            return top + plotHeight - (int) Math.round(Math.max(0, value) / scale * plotHeight);
+        }
+
+        private double niceCeiling(double value) {
+            double magnitude = Math.pow(10, Math.floor(Math.log10(value)));
+            for (double step : new double[] {1, 2, 2.5, 5, 10}) {
+                if (step * magnitude >= value) return step * magnitude;
+            }
+            return 10 * magnitude;
+        }
+    }
+}
@@ -3,33 +3,91 @@ package core.ui;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
 import core.agents.BaseAgent;
 import core.agents.AgentType;
 import core.agents.AgentLocation;
 import core.agents.AgentState;
+import core.agents.AgentStatus;
+
+/**
+ * 2D view of the plant. Each animation frame (a coordinator refresh every 16 ms) advances one
+ * AgentVisual per agent, at the agent's index, toward where the latest snapshot puts it, and
+ * repaints only the area covering agents that moved or changed state and
+ * queue bubbles whose counts changed; a frame in which nothing changed paints nothing. The zones
+ * never change, so they are drawn once into a cached image that every paint starts from.
+ *
+ * Above ui.visualization.detail.limit agents (500 by default) individual agents are no longer
+ * drawn: each zone shows a density glyph instead, its agent count over a heat colour and a bar
+ * split by state, so painting costs the same for any population.
+ */
+public class FactoryVisualizationWindow extends JFrame implements UIRefreshCoordinator.View {
+    private static final long REFRESH_MILLIS = 16;
+    private static final int AGENT_SIZE = 24;
+    // Agent shape, state dot and ID label, around the agent's position
+    private static final int AGENT_HALF_WIDTH = 50;
+    private static final int AGENT_TOP = AGENT_SIZE / 2 + 2;
+    private static final int AGENT_BOTTOM = AGENT_SIZE / 2 + 16;
+    private static final int BUBBLE_SIZE = 35;
+    private static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 10);
+    private static final Font BUBBLE_FONT = new Font("Arial", Font.BOLD, 18);
+    private static final Color SHADOW = new Color(0, 0, 0, 50);
+    private static final Color LABEL_BACKGROUND = new Color(255, 255, 255, 200);
+    private static final Color BUBBLE_FILL = new Color(255, 100, 100, 150);
+    private static final Color WORKER_COLOR = new Color(70, 130, 180);
+    private static final Color MANAGER_COLOR = new Color(178, 34, 34);
+    private static final Color INVENTORY_COLOR = new Color(218, 165, 32);
+    private static final Color DELIVERY_COLOR = new Color(60, 179, 113);
+    private static final Color BACKGROUND_COLOR = new Color(245, 245, 245);
+    private static final Font ZONE_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font COUNT_FONT = new Font("Arial", Font.BOLD, 28);
+
+    private static final int DETAIL_LIMIT = Integer.getInteger("ui.visualization.detail.limit", 500);
+    private static final AgentState[] STATES = AgentState.values();
+    private static final Zone[] ZONES = new Zone[AgentLocation.values().length];
+
+    static {
+        zone(AgentLocation.BATHROOM, 130, 40, 280, 180, new Color(230, 230, 250), "BATHROOM", 140);
+        zone(AgentLocation.BREAKROOM, 430, 40, 280, 180, new Color(240, 255, 240), "BREAKROOM", 140);
+        zone(AgentLocation.WAREHOUSE, 130, 240, 280, 340, new Color(255, 235, 205), "WAREHOUSE", 140);
+        zone(AgentLocation.FACTORY, 430, 240, 280, 340, new Color(200, 220, 255), "FACTORY", 140);
+        zone(AgentLocation.LOADING_DECK, 130, 600, 280, 140, new Color(255, 250, 205), "LOADING DECK", 80);
+        zone(AgentLocation.SUPPLIER, 430, 600, 280, 140, new Color(255, 228, 225), "SUPPLIER", 80);
+    }
 
-public class FactoryVisualizationWindow extends JFrame implements Runnable {
-
-    private final List<BaseAgent> agents;
+    private final BaseAgent[] agents;
     private final VisualizationPanel panel;
     private volatile boolean running = true;
-    private final Map<String, AgentVisual> agentVisuals;
+    // Coordinator thread only
+    private final Rectangle dirty = new Rectangle();
+    // Same index as agents; written by the coordinator thread, read by paint. Null when aggregated.
+    private final AgentVisual[] visuals;
+    private final boolean aggregated;
+    // Aggregated mode: agents per location and state, at location * STATES.length + state
+    private volatile int[] zoneCounts;
+
+    // Waiting workers shown in the factory, bathroom and breakroom bubbles
+    private volatile int factoryQueue;
+    private volatile int bathroomQueue;
+    private volatile int breakroomQueue;
 
     public FactoryVisualizationWindow(List<BaseAgent> agents) {
-        this.agents = agents;
-        this.agentVisuals = new HashMap<>();
+        this.agents = agents.toArray(new BaseAgent[0]);
+        this.aggregated = this.agents.length > DETAIL_LIMIT;
+        this.visuals = aggregated ? null : new AgentVisual[this.agents.length];
+        this.zoneCounts = new int[ZONES.length * STATES.length];
 
         setTitle("Factory 2D Visualization - Proyecto Final");
         setSize(1450, 850);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
 
-        for (BaseAgent agent : agents) {
-            Point2D startPos = getLocationCenter(agent.getLocation());
-            agentVisuals.put(agent.getThreadID(), new AgentVisual(startPos));
+        for (int i = 0; !aggregated && i < this.agents.length; i++) {
+            AgentStatus status = this.agents[i].getStatus();
+            Point2D startPos = getLocationCenter(status.getLocation(), i);
+            visuals[i] = new AgentVisual(startPos, status.getState());
         }
 
         JPanel infoPanel = createInfoPanel();
@@ -92,10 +150,10 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
         legend.setBorder(BorderFactory.createTitledBorder("Legend"));
         legend.setPreferredSize(new Dimension(280, 0));
 
-        legend.add(createLegendItem("Worker", new Color(70, 130, 180)));
-        legend.add(createLegendItem("Manager", new Color(178, 34, 34)));
-        legend.add(createLegendItem("Inventory", new Color(218, 165, 32)));
-        legend.add(createLegendItem("Delivery", new Color(60, 179, 113)));
+        legend.add(createLegendItem("Worker", WORKER_COLOR));
+        legend.add(createLegendItem("Manager", MANAGER_COLOR));
+        legend.add(createLegendItem("Inventory", INVENTORY_COLOR));
+        legend.add(createLegendItem("Delivery", DELIVERY_COLOR));
         legend.add(Box.createVerticalStrut(20));
 
         legend.add(new JLabel("States:"));
@@ -105,6 +163,12 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
         legend.add(createStateLegendItem("IDLE", Color.GRAY));
         legend.add(createStateLegendItem("ON_BREAK", Color.ORANGE));
 
+        if (aggregated) {
+            legend.add(Box.createVerticalStrut(20));
+            legend.add(new JLabel("<html>" + agents.length + " agents: showing per-zone<br>"
+                    + "counts and state bars</html>"));
+        }
+
         return legend;
     }
 
@@ -130,69 +194,163 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
     }
 
     @Override
-    public void run() {
-        while (running) {
-            try {
-                updateAgentPositions();
-                SwingUtilities.invokeLater(() -> panel.repaint());
-                Thread.sleep(16);
-            } catch (InterruptedException e) {
-                running = false;
-                break;
-            }
+    public void refresh(SimulationSnapshot snapshot) {
+        if (!running) return;
+        dirty.setBounds(0, 0, 0, 0);
+        updateAgentPositions(snapshot, dirty);
+        if (!dirty.isEmpty()) {
+            // repaint is thread-safe; Swing merges it with any repaint still pending
+            panel.repaint(dirty.x, dirty.y, dirty.width, dirty.height);
         }
     }
 
-    private void updateAgentPositions() {
+    @Override
+    public long getRefreshMillis() {
+        return REFRESH_MILLIS;
+    }
+
+    /** Advances every visual one frame and adds whatever has to be redrawn to dirty. */
+    private void updateAgentPositions(SimulationSnapshot snapshot, Rectangle dirty) {
         final long moveDurationMs = 2000;
+        long now = System.currentTimeMillis();
+        int waitingFactory = 0;
+        int waitingBathroom = 0;
+        int waitingBreakroom = 0;
+        int[] counts = aggregated ? new int[ZONES.length * STATES.length] : null;
+
+        for (int i = 0; i < agents.length; i++) {
+            BaseAgent agent = agents[i];
+            AgentVisual visual = aggregated ? null : visuals[i];
+            AgentLocation location = snapshot.location(i);
+            AgentState state = snapshot.state(i);
+
+            if (state == AgentState.WAITING) {
+                if (location == AgentLocation.FACTORY && agent.getAgentType() == AgentType.WORKER) {
+                    waitingFactory++;
+                } else if (location == AgentLocation.BATHROOM) {
+                    waitingBathroom++;
+                } else if (location == AgentLocation.BREAKROOM) {
+                    waitingBreakroom++;
+                }
+            }
+            if (aggregated) {
+                counts[location.ordinal() * STATES.length + state.ordinal()]++;
+                continue;
+            }
 
-        for (BaseAgent agent : agents) {
-            AgentVisual visual = agentVisuals.get(agent.getThreadID());
-            if (visual != null) {
+            if (visual.currentLocation != location) {
                 Point2D targetPos;
-
-                if (agent.getAgentType() == AgentType.MANAGER &&
-                        agent.getLocation() == AgentLocation.FACTORY) {
+                if (agent.getAgentType() == AgentType.MANAGER && location == AgentLocation.FACTORY) {
                     targetPos = getManagerPosition();
-                } else if (agent.getAgentType() == AgentType.INVENTORY &&
-                        agent.getLocation() == AgentLocation.WAREHOUSE) {
+                } else if (agent.getAgentType() == AgentType.INVENTORY && location == AgentLocation.WAREHOUSE) {
                     targetPos = getInventoryPosition();
                 } else {
-                    if (!visual.currentLocation.equals(agent.getLocation())) {
-                        targetPos = getLocationCenter(agent.getLocation());
-                        visual.setTargetPosition(targetPos, moveDurationMs);
-                        visual.currentLocation = agent.getLocation();
-                    } else {
-                        targetPos = visual.targetPosition;
-                    }
+                    targetPos = getLocationCenter(location, i);
                 }
+                visual.setTargetPosition(targetPos, moveDurationMs, now);
+                visual.currentLocation = location;
+            }
+
+            double oldX = visual.x;
+            double oldY = visual.y;
+            boolean moved = visual.updatePosition(now);
+            if (moved) {
+                addAgentBounds(dirty, oldX, oldY);
+            }
+            if (moved || visual.state != state) {
+                visual.state = state;
+                addAgentBounds(dirty, visual.x, visual.y);
+            }
+        }
+
+        if (aggregated) {
+            publishZoneCounts(counts, dirty);
+        }
 
-                visual.updatePosition();
+        if (waitingFactory != factoryQueue) {
+            factoryQueue = waitingFactory;
+            addBubbleBounds(dirty, 450, 280);
+        }
+        if (waitingBathroom != bathroomQueue) {
+            bathroomQueue = waitingBathroom;
+            addBubbleBounds(dirty, 150, 80);
+        }
+        if (waitingBreakroom != breakroomQueue) {
+            breakroomQueue = waitingBreakroom;
+            addBubbleBounds(dirty, 450, 80);
+        }
+    }
+
+    // Zones whose counts changed are redrawn; all of them if the busiest zone's count changed,
+    // since every zone's heat is relative to it
+    private void publishZoneCounts(int[] counts, Rectangle dirty) {
+        int[] previous = zoneCounts;
+        if (Arrays.equals(counts, previous)) return;
+        boolean maxChanged = busiestZone(counts) != busiestZone(previous);
+        for (int zone = 0; zone < ZONES.length; zone++) {
+            int from = zone * STATES.length;
+            boolean changed = false;
+            for (int state = 0; state < STATES.length && !changed; state++) {
+                changed = counts[from + state] != previous[from + state];
+            }
+            if (changed || maxChanged) {
+                Zone z = ZONES[zone];
+                add(dirty, z.x, z.y, z.width, z.height);
             }
         }
+        zoneCounts = counts;
     }
 
-    private Point2D getLocationCenter(AgentLocation location) {
-        double offsetX = (Math.random() - 0.5) * 120;
-        double offsetY = (Math.random() - 0.5) * 140;
-        double offsetYLimitado = (Math.random() - 0.5) * 80;
-
-        switch (location) {
-            case FACTORY:
-                return new Point2D.Double(570 + offsetX, 410 + offsetY);
-            case WAREHOUSE:
-                return new Point2D.Double(270 + offsetX, 410 + offsetY);
-            case BATHROOM:
-                return new Point2D.Double(270 + offsetX, 130 + offsetY);
-            case BREAKROOM:
-                return new Point2D.Double(570 + offsetX, 130 + offsetY);
-            case LOADING_DECK:
-                return new Point2D.Double(270 + offsetX, 670 + offsetYLimitado);
-            case SUPPLIER:
-                return new Point2D.Double(570 + offsetX, 670 + offsetYLimitado);
-            default:
-                return new Point2D.Double(570 + offsetX, 410 + offsetY);
+    private static int zoneTotal(int[] counts, int zone) {
+        int total = 0;
+        for (int state = 0; state < STATES.length; state++) {
+            total += counts[zone * STATES.length + state];
+        }
+        return total;
+    }
+
+    private static int busiestZone(int[] counts) {
+        int max = 0;
+        for (int zone = 0; zone < ZONES.length; zone++) {
+            max = Math.max(max, zoneTotal(counts, zone));
         }
+        return max;
+    }
+
+    private static void addAgentBounds(Rectangle dirty, double x, double y) {
+        add(dirty, (int) x - AGENT_HALF_WIDTH, (int) y - AGENT_TOP, 2 * AGENT_HALF_WIDTH, AGENT_TOP + AGENT_BOTTOM);
+    }
+
+    private static void addBubbleBounds(Rectangle dirty, int x, int y) {
+        add(dirty, x - 2, y - 2, BUBBLE_SIZE + 4, BUBBLE_SIZE + 4);
+    }
+
+    // Rectangle.add treats an empty rectangle at 0,0 as a point, which would drag the union to the origin
+    private static void add(Rectangle dirty, int x, int y, int width, int height) {
+        if (dirty.isEmpty()) {
+            dirty.setBounds(x, y, width, height);
+        } else {
+            dirty.add(new Rectangle(x, y, width, height));
+        }
+    }
+
+    /**
+     * Where agent number agentIndex stands in a zone: the zone's centre plus an offset derived
+     * from the agent and the zone, so agents spread out but each always returns to the same spot.
+     */
+    private static Point2D getLocationCenter(AgentLocation location, int agentIndex) {
+        Zone zone = ZONES[location.ordinal()];
+        long h = (agentIndex + 1) * 0x9E3779B97F4A7C15L + location.ordinal();
+        h ^= h >>> 31;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 29;
+        double offsetX = ((h & 0xFFFF) / 65535.0 - 0.5) * 120;
+        double offsetY = (((h >>> 16) & 0xFFFF) / 65535.0 - 0.5) * zone.spreadY;
+        return new Point2D.Double(zone.x + zone.width / 2.0 + offsetX, zone.y + zone.height / 2.0 + offsetY);
+    }
+
+    private static void zone(AgentLocation location, int x, int y, int width, int height, Color color, String label, int spreadY) {
+        ZONES[location.ordinal()] = new Zone(x, y, width, height, color, label, spreadY);
     }
 
     private Point2D getManagerPosition() {
@@ -206,13 +364,13 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
     private Color getAgentTypeColor(AgentType type) {
         switch (type) {
             case WORKER:
-                return new Color(70, 130, 180);
+                return WORKER_COLOR;
             case MANAGER:
-                return new Color(178, 34, 34);
+                return MANAGER_COLOR;
             case INVENTORY:
-                return new Color(218, 165, 32);
+                return INVENTORY_COLOR;
             case DELIVERY:
-                return new Color(60, 179, 113);
+                return DELIVERY_COLOR;
             default:
                 return Color.GRAY;
         }
@@ -243,80 +401,140 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
         dispose();
     }
 
+    private static class Zone {
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        final Color color;
+        final String label;
+        // Vertical range agents are spread over around the centre
+        final int spreadY;
+
+        Zone(int x, int y, int width, int height, Color color, String label, int spreadY) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.color = color;
+            this.label = label;
+            this.spreadY = spreadY;
+        }
+    }
+
+    // Plain fields, no per-frame allocation; paint may see a position one frame old, which is harmless
     private static class AgentVisual {
-        Point2D.Double currentPos;
-        Point2D.Double targetPosition;
-        Point2D.Double startPosition;
+        volatile double x;
+        volatile double y;
+        double startX;
+        double startY;
+        double targetX;
+        double targetY;
         AgentLocation currentLocation;
+        // The state the agent is drawn with
+        volatile AgentState state;
 
         private long moveStartTimeMs;
         private long moveDurationMs;
         private boolean isMoving;
 
-        AgentVisual(Point2D startPos) {
-            this.currentPos = new Point2D.Double(startPos.getX(), startPos.getY());
-            this.targetPosition = new Point2D.Double(startPos.getX(), startPos.getY());
-            this.startPosition = new Point2D.Double(startPos.getX(), startPos.getY());
+        AgentVisual(Point2D startPos, AgentState state) {
+            this.x = startPos.getX();
+            this.y = startPos.getY();
+            this.targetX = x;
+            this.targetY = y;
             this.currentLocation = AgentLocation.FACTORY;
+            this.state = state;
             this.isMoving = false;
             this.moveDurationMs = 0;
         }
 
-        void setTargetPosition(Point2D target, long durationMs) {
-            this.startPosition = new Point2D.Double(currentPos.x, currentPos.y);
-            this.targetPosition = new Point2D.Double(target.getX(), target.getY());
-            this.moveStartTimeMs = System.currentTimeMillis();
+        void setTargetPosition(Point2D target, long durationMs, long now) {
+            this.startX = x;
+            this.startY = y;
+            this.targetX = target.getX();
+            this.targetY = target.getY();
+            this.moveStartTimeMs = now;
             this.moveDurationMs = Math.max(durationMs, 1);
             this.isMoving = true;
         }
 
-        void updatePosition() {
+        /** Returns false if the visual stood still this frame. */
+        boolean updatePosition(long now) {
             if (!isMoving) {
-                return;
+                return false;
             }
 
-            long now = System.currentTimeMillis();
             long elapsed = now - moveStartTimeMs;
 
             double t = (double) elapsed / (double) moveDurationMs;
             if (t >= 1.0) {
-                currentPos.x = targetPosition.x;
-                currentPos.y = targetPosition.y;
+                x = targetX;
+                y = targetY;
                 isMoving = false;
-                return;
+                return true;
             }
 
-            currentPos.x = startPosition.x + (targetPosition.x - startPosition.x) * t;
-            currentPos.y = startPosition.y + (targetPosition.y - startPosition.y) * t;
+            x = startX + (targetX - startX) * t;
+            y = startY + (targetY - startY) * t;
+            return true;
         }
     }
 
     private class VisualizationPanel extends JPanel {
+        // The zones, rendered once per panel size; EDT only
+        private BufferedImage background;
 
         public VisualizationPanel() {
-            setBackground(new Color(245, 245, 245));
+            setBackground(BACKGROUND_COLOR);
+            setOpaque(true);
         }
 
         @Override
         protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
             Graphics2D g2d = (Graphics2D) g;
+            int width = Math.max(1, getWidth());
+            int height = Math.max(1, getHeight());
+            if (background == null || background.getWidth() != width || background.getHeight() != height) {
+                background = renderBackground(width, height);
+            }
+            // Only the clipped part is copied, so small repaints stay cheap
+            g2d.drawImage(background, 0, 0, null);
 
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
-            drawZones(g2d);
+            if (aggregated) {
+                drawDensity(g2d);
+            }
             drawAllQueues(g2d);
-            drawAgents(g2d);
+            if (!aggregated) {
+                drawAgents(g2d);
+            }
+        }
+
+        private BufferedImage renderBackground(int width, int height) {
+            GraphicsConfiguration config = getGraphicsConfiguration();
+            BufferedImage image = config != null
+                    ? config.createCompatibleImage(width, height)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = image.createGraphics();
+            try {
+                g2d.setColor(BACKGROUND_COLOR);
+                g2d.fillRect(0, 0, width, height);
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                drawZones(g2d);
+            } finally {
+                g2d.dispose();
+            }
+            return image;
         }
 
         private void drawZones(Graphics2D g2d) {
-            drawZone(g2d, 130, 40, 280, 180, new Color(230, 230, 250), "BATHROOM");
-            drawZone(g2d, 430, 40, 280, 180, new Color(240, 255, 240), "BREAKROOM");
-            drawZone(g2d, 130, 240, 280, 340, new Color(255, 235, 205), "WAREHOUSE");
-            drawZone(g2d, 430, 240, 280, 340, new Color(200, 220, 255), "FACTORY");
-            drawZone(g2d, 130, 600, 280, 140, new Color(255, 250, 205), "LOADING DECK");
-            drawZone(g2d, 430, 600, 280, 140, new Color(255, 228, 225), "SUPPLIER");
+            for (Zone zone : ZONES) {
+                drawZone(g2d, zone.x, zone.y, zone.width, zone.height, zone.color, zone.label);
+            }
         }
 
         private void drawZone(Graphics2D g2d, int x, int y, int width, int height, Color color, String label) {
@@ -328,52 +546,75 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
             g2d.drawRoundRect(x, y, width, height, 20, 20);
 
             g2d.setColor(Color.BLACK);
-            g2d.setFont(new Font("Arial", Font.BOLD, 14));
+            g2d.setFont(ZONE_FONT);
             FontMetrics fm = g2d.getFontMetrics();
             int labelWidth = fm.stringWidth(label);
             g2d.drawString(label, x + (width - labelWidth) / 2, y + 20);
         }
 
-        private void drawAllQueues(Graphics2D g2d) {
-            long waitingFactory = agents.stream()
-                    .filter(a -> a.getLocation() == AgentLocation.FACTORY
-                            && a.getAgentState() == AgentState.WAITING
-                            && a.getAgentType() == AgentType.WORKER)
-                    .count();
-
-            if (waitingFactory > 0) {
-                drawQueueBubble(g2d, 450, 280, waitingFactory);
+        /** Per zone: a heat wash scaled to the busiest zone, the agent count and a bar split by state. */
+        private void drawDensity(Graphics2D g2d) {
+            int[] counts = zoneCounts;
+            int max = Math.max(1, busiestZone(counts));
+            for (int zone = 0; zone < ZONES.length; zone++) {
+                int total = zoneTotal(counts, zone);
+                if (total == 0) continue;
+                Zone z = ZONES[zone];
+
+                float heat = (float) total / max;
+                g2d.setColor(new Color(230, (int) (200 * (1 - heat)), 0, 40 + (int) (120 * heat)));
+                g2d.fillRoundRect(z.x + 6, z.y + 28, z.width - 12, z.height - 34, 14, 14);
+
+                String text = String.valueOf(total);
+                g2d.setFont(COUNT_FONT);
+                FontMetrics fm = g2d.getFontMetrics();
+                g2d.setColor(Color.BLACK);
+                g2d.drawString(text, z.x + (z.width - fm.stringWidth(text)) / 2, z.y + z.height / 2 + fm.getAscent() / 2);
+
+                int barX = z.x + 20;
+                int barWidth = z.width - 40;
+                int barY = z.y + z.height - 22;
+                int drawn = 0;
+                int seen = 0;
+                for (int state = 0; state < STATES.length; state++) {
+                    int n = counts[zone * STATES.length + state];
+                    if (n == 0) continue;
+                    seen += n;
+                    // Cumulative rounding so the segments always fill the bar exactly
+                    int end = (int) ((long) barWidth * seen / total);
+                    g2d.setColor(getStateIndicatorColor(STATES[state]));
+                    g2d.fillRect(barX + drawn, barY, end - drawn, 10);
+                    drawn = end;
+                }
+                g2d.setColor(Color.DARK_GRAY);
+                g2d.setStroke(new BasicStroke(1));
+                g2d.drawRect(barX, barY, barWidth, 10);
             }
+        }
 
-            long waitingBathroom = agents.stream()
-                    .filter(a -> a.getLocation() == AgentLocation.BATHROOM
-                            && a.getAgentState() == AgentState.WAITING)
-                    .count();
-
-            if (waitingBathroom > 0) {
-                drawQueueBubble(g2d, 150, 80, waitingBathroom);
+        // Counts come from the animation thread, so painting never scans the agents
+        private void drawAllQueues(Graphics2D g2d) {
+            if (factoryQueue > 0) {
+                drawQueueBubble(g2d, 450, 280, factoryQueue);
             }
-
-            long waitingBreakroom = agents.stream()
-                    .filter(a -> a.getLocation() == AgentLocation.BREAKROOM
-                            && a.getAgentState() == AgentState.WAITING)
-                    .count();
-
-            if (waitingBreakroom > 0) {
-                drawQueueBubble(g2d, 450, 80, waitingBreakroom);
+            if (bathroomQueue > 0) {
+                drawQueueBubble(g2d, 150, 80, bathroomQueue);
+            }
+            if (breakroomQueue > 0) {
+                drawQueueBubble(g2d, 450, 80, breakroomQueue);
             }
         }
 
         private void drawQueueBubble(Graphics2D g2d, int x, int y, long count) {
-            g2d.setColor(new Color(255, 100, 100, 150));
-            g2d.fillOval(x, y, 35, 35);
+            g2d.setColor(BUBBLE_FILL);
+            g2d.fillOval(x, y, BUBBLE_SIZE, BUBBLE_SIZE);
 
             g2d.setColor(Color.RED);
             g2d.setStroke(new BasicStroke(2));
-            g2d.drawOval(x, y, 35, 35);
+            g2d.drawOval(x, y, BUBBLE_SIZE, BUBBLE_SIZE);
 
             g2d.setColor(Color.WHITE);
-            g2d.setFont(new Font("Arial", Font.BOLD, 18));
+            g2d.setFont(BUBBLE_FONT);
             String queueText = String.valueOf(count);
             FontMetrics fm = g2d.getFontMetrics();
             int textWidth = fm.stringWidth(queueText);
@@ -381,23 +622,26 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
             g2d.drawString(queueText, x + 17 - textWidth / 2, y + 24);
         }
 
+        // Only agents overlapping the repainted area are drawn
         private void drawAgents(Graphics2D g2d) {
-            for (BaseAgent agent : agents) {
-                AgentVisual visual = agentVisuals.get(agent.getThreadID());
-                if (visual != null) {
-                    drawAgent(g2d, agent, visual.currentPos);
+            Rectangle clip = g2d.getClipBounds();
+            for (int i = 0; i < agents.length; i++) {
+                AgentVisual visual = visuals[i];
+                int x = (int) visual.x;
+                int y = (int) visual.y;
+                if (clip != null && !clip.intersects(x - AGENT_HALF_WIDTH, y - AGENT_TOP, 2 * AGENT_HALF_WIDTH, AGENT_TOP + AGENT_BOTTOM)) {
+                    continue;
                 }
+                drawAgent(g2d, agents[i], x, y, visual.state);
             }
         }
 
-        private void drawAgent(Graphics2D g2d, BaseAgent agent, Point2D pos) {
-            int x = (int) pos.getX();
-            int y = (int) pos.getY();
-            int size = 24;
+        private void drawAgent(Graphics2D g2d, BaseAgent agent, int x, int y, AgentState state) {
+            int size = AGENT_SIZE;
 
             Color agentColor = getAgentTypeColor(agent.getAgentType());
 
-            g2d.setColor(new Color(0, 0, 0, 50));
+            g2d.setColor(SHADOW);
             g2d.fillOval(x - size / 2 + 2, y - size / 2 + 2, size, size);
 
             g2d.setColor(agentColor);
@@ -439,19 +683,19 @@ public class FactoryVisualizationWindow extends JFrame implements Runnable {
                     break;
             }
 
-            Color stateColor = getStateIndicatorColor(agent.getAgentState());
+            Color stateColor = getStateIndicatorColor(state);
             g2d.setColor(stateColor);
             g2d.fillOval(x + size / 3, y - size / 2, 8, 8);
             g2d.setColor(Color.BLACK);
             g2d.drawOval(x + size / 3, y - size / 2, 8, 8);
 
             g2d.setColor(Color.BLACK);
-            g2d.setFont(new Font("Arial", Font.PLAIN, 10));
+            g2d.setFont(LABEL_FONT);
             FontMetrics fm = g2d.getFontMetrics();
             String id = agent.getThreadID();
             int labelWidth = fm.stringWidth(id);
 
-            g2d.setColor(new Color(255, 255, 255, 200));
+            g2d.setColor(LABEL_BACKGROUND);
             g2d.fillRoundRect(x - labelWidth / 2 - 2, y + size / 2 + 2, labelWidth + 4, 12, 4, 4);
 
             g2d.setColor(Color.BLACK);
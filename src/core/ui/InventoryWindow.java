@@ -4,7 +4,8 @@ import javax.swing.*;
 import java.awt.*;
 import factory.warehouse.Warehouse;
 
-public class InventoryWindow extends JFrame implements Runnable {
+public class InventoryWindow extends JFrame implements UIRefreshCoordinator.View {
+    private static final long REFRESH_MILLIS = 1000;
 
     private final Warehouse warehouse;
     private final JLabel[] inventoryLabels;
@@ -41,19 +42,19 @@ public class InventoryWindow extends JFrame implements Runnable {
         setVisible(true);
     }
 
+    // Inventory is not part of the agent snapshot; the coordinator only sets the pace
     @Override
-    public void run() {
-        while (running) {
-            try {
-                SwingUtilities.invokeLater(() -> updateInventoryDisplay());
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                running = false;
-                break;
-            }
+    public void refresh(SimulationSnapshot snapshot) {
+        if (running) {
+            SwingUtilities.invokeLater(this::updateInventoryDisplay);
         }
     }
 
+    @Override
+    public long getRefreshMillis() {
+        return REFRESH_MILLIS;
+    }
+
     private void updateInventoryDisplay() {
         for (int i = 0; i < warehouse.inventory.size(); i++) {
             inventoryLabels[i].setText(String.valueOf(warehouse.inventory.get(i)));
@@ -0,0 +1,66 @@
+package core.ui;
+
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import core.agents.AgentStatus;
+import core.agents.BaseAgent;
+
+/**
+ * Every agent's published AgentStatus, read once in a single pass, at the agent's index in the
+ * list the coordinator was created with. Never changes once taken, so all views can share one
+ * and agree with each other, and each agent's state, location and descriptor belong together.
+ */
+public final class SimulationSnapshot {
+    private final long sequence;
+    private final long takenAtNanos;
+    private final BaseAgent[] agents;
+    private final AgentStatus[] statuses;
+
+    private SimulationSnapshot(long sequence, BaseAgent[] agents) {
+        this.sequence = sequence;
+        this.agents = agents;
+        this.statuses = new AgentStatus[agents.length];
+        for (int i = 0; i < agents.length; i++) {
+            statuses[i] = agents[i].getStatus();
+        }
+        this.takenAtNanos = System.nanoTime();
+    }
+
+    static SimulationSnapshot take(long sequence, BaseAgent[] agents) {
+        return new SimulationSnapshot(sequence, agents);
+    }
+
+    /** Increases by one per snapshot taken, so a view can tell a repeat from a new one. */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTakenAtNanos() {
+        return takenAtNanos;
+    }
+
+    public int size() {
+        return agents.length;
+    }
+
+    /** The agent itself, for its immutable identity (ID, type); its fields are in the arrays. */
+    public BaseAgent agent(int index) {
+        return agents[index];
+    }
+
+    public AgentStatus status(int index) {
+        return statuses[index];
+    }
+
+    public AgentState state(int index) {
+        return statuses[index].getState();
+    }
+
+    public AgentLocation location(int index) {
+        return statuses[index].getLocation();
+    }
+
+    public String descriptor(int index) {
+        return statuses[index].getStateDescriptor();
+    }
+}
@@ -1,21 +1,44 @@
 package core.ui;
 
 import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import core.agents.AgentType;
 import core.agents.BaseAgent;
+import core.metrics.ThreadProfiler;
+import core.metrics.ThreadProfiler.ContendedLock;
+import core.metrics.ThreadProfiler.Site;
+import core.metrics.ThreadProfiler.ThreadSample;
+
+/**
+ * Where the agents' threads spend their time. A ThreadProfiler samples every agent thread each
+ * -Dui.profiler.sample.ms (default 100) on the refresh thread, less often when a sample would
+ * take over 1% of that time. Once a second the window shows thread states per agent type, each
+ * agent's CPU%, blocked and waited totals and sampled time waiting on the warehouse, inventory
+ * and workstation locks, and the most contended locks.
+ */
+public class ThreadStatesWindow extends JFrame implements UIRefreshCoordinator.View {
+    private static final long SAMPLE_MILLIS = Long.getLong("ui.profiler.sample.ms", 100);
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int TOP_LOCKS = 5;
+    private static final Site[] SITES = {Site.WAREHOUSE, Site.INVENTORY, Site.WORKSTATIONS};
 
-public class ThreadStatesWindow extends JFrame implements Runnable {
-    private final ArrayList<BaseAgent> agents;
     private final DefaultTableModel tableModel;
+    private final ProfileTableModel profileModel;
+    private final DefaultTableModel lockModel;
     private volatile boolean running = true;
 
-    public ThreadStatesWindow(ArrayList<BaseAgent> agents) {
-        this.agents = agents;
+    // Refresh thread only
+    private ThreadProfiler profiler;
+    private long lastReportNanos;
 
+    public ThreadStatesWindow() {
         setTitle("Thread State Summary");
-        setSize(600, 300);
+        setSize(1200, 750);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
 
@@ -25,8 +48,28 @@ public class ThreadStatesWindow extends JFrame implements Runnable {
         table.setFont(new Font("SansSerif", Font.PLAIN, 14));
         table.setRowHeight(25);
 
+        profileModel = new ProfileTableModel();
+        JTable profileTable = new JTable(profileModel);
+        profileTable.setFont(new Font("SansSerif", Font.PLAIN, 13));
+        profileTable.setRowHeight(22);
+        profileTable.getColumnModel().getColumn(9).setPreferredWidth(320);
+
+        lockModel = new DefaultTableModel(new String[] {"Lock", "Site", "Sampled wait (ms)", "Waiters seen", "Last owner"}, 0);
+        JTable lockTable = new JTable(lockModel);
+        lockTable.setFont(new Font("SansSerif", Font.PLAIN, 13));
+        lockTable.setRowHeight(22);
+
         JScrollPane scrollPane = new JScrollPane(table);
-        add(scrollPane, BorderLayout.CENTER);
+        scrollPane.setPreferredSize(new Dimension(0, 150));
+        JScrollPane lockPane = new JScrollPane(lockTable);
+        lockPane.setPreferredSize(new Dimension(0, 150));
+        lockPane.setBorder(BorderFactory.createTitledBorder("Most contended locks"));
+
+        JPanel center = new JPanel(new BorderLayout(0, 5));
+        center.add(scrollPane, BorderLayout.NORTH);
+        center.add(new JScrollPane(profileTable), BorderLayout.CENTER);
+        center.add(lockPane, BorderLayout.SOUTH);
+        add(center, BorderLayout.CENTER);
 
         JLabel title = new JLabel("Thread State Summary per Agent", SwingConstants.CENTER);
         title.setFont(new Font("SansSerif", Font.BOLD, 16));
@@ -36,24 +79,36 @@ public class ThreadStatesWindow extends JFrame implements Runnable {
     }
 
     @Override
-    public void run() {
-        while (running) {
-            try {
-                SwingUtilities.invokeLater(this::updateTable);
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                running = false;
-                break;
+    public void refresh(SimulationSnapshot snapshot) {
+        if (!running) return;
+        if (profiler == null) {
+            List<BaseAgent> agents = new ArrayList<>(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++) {
+                agents.add(snapshot.agent(i));
             }
+            profiler = new ThreadProfiler(agents);
         }
+        profiler.sample();
+
+        long now = System.nanoTime();
+        if (now - lastReportNanos < REPORT_NANOS) return;
+        lastReportNanos = now;
+        ThreadSample[] samples = profiler.report();
+        List<ContendedLock> locks = profiler.topContended(TOP_LOCKS);
+        SwingUtilities.invokeLater(() -> updateTables(snapshot, samples, locks));
     }
 
-    private void updateTable() {
+    @Override
+    public long getRefreshMillis() {
+        return SAMPLE_MILLIS;
+    }
+
+    private void updateTables(SimulationSnapshot snapshot, ThreadSample[] samples, List<ContendedLock> locks) {
         Map<String, EnumMap<Thread.State, Integer>> typeStats = new HashMap<>();
 
-        for (BaseAgent agent : agents) {
-            String type = agent.getAgentType().toString();
-            Thread.State state = agent.getState();
+        for (int i = 0; i < samples.length; i++) {
+            String type = snapshot.agent(i).getAgentType().toString();
+            Thread.State state = samples[i].getState();
 
             typeStats.putIfAbsent(type, new EnumMap<>(Thread.State.class));
             EnumMap<Thread.State, Integer> map = typeStats.get(type);
@@ -72,9 +127,87 @@ public class ThreadStatesWindow extends JFrame implements Runnable {
 
             tableModel.addRow(new Object[]{type, runnable, waiting, timed, blocked, terminated});
         }
+
+        profileModel.update(snapshot, samples);
+
+        lockModel.setRowCount(0);
+        for (ContendedLock lock : locks) {
+            lockModel.addRow(new Object[] {lock.getName(), lock.getSite().getLabel(), lock.getWaitMillis(),
+                    lock.getObservations(), lock.getLastOwner() != null ? lock.getLastOwner() : ""});
+        }
     }
 
     public void stop() {
         running = false;
     }
+
+    // One row per agent thread; replaced wholesale once a second. EDT only.
+    private static class ProfileTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Agent", "Type", "Thread State", "CPU %", "Blocked (n / ms)",
+                "Waited (n / ms)", Site.WAREHOUSE.getLabel() + " ms", Site.INVENTORY.getLabel() + " ms",
+                Site.WORKSTATIONS.getLabel() + " ms", "Waiting On"};
+
+        private ThreadSample[] samples = new ThreadSample[0];
+        private AgentType[] types = new AgentType[0];
+
+        void update(SimulationSnapshot snapshot, ThreadSample[] samples) {
+            if (types.length != samples.length) {
+                types = new AgentType[samples.length];
+                for (int i = 0; i < samples.length; i++) {
+                    types[i] = snapshot.agent(i).getAgentType();
+                }
+            }
+            boolean sameRows = this.samples.length == samples.length;
+            this.samples = samples;
+            if (sameRows) {
+                fireTableRowsUpdated(0, samples.length - 1);
+            } else {
+                fireTableDataChanged();
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return samples.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ThreadSample sample = samples[row];
+            switch (column) {
+                case 0:
+                    return sample.getName();
+                case 1:
+                    return types[row];
+                case 2:
+                    return sample.getState();
+                case 3:
+                    return sample.getCpuPercent() < 0 ? "n/a" : String.format("%.1f", sample.getCpuPercent());
+                case 4:
+                    return sample.getBlockedCount() + " / " + millis(sample.getBlockedMillis());
+                case 5:
+                    return sample.getWaitedCount() + " / " + millis(sample.getWaitedMillis());
+                case 6:
+                case 7:
+                case 8:
+                    return sample.getSiteMillis(SITES[column - 6]);
+                default:
+                    return sample.getWaitingOn();
+            }
+        }
+
+        private static String millis(long millis) {
+            return millis < 0 ? "n/a" : String.valueOf(millis);
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package core.ui;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import core.agents.BaseAgent;
+
+/**
+ * The one thread that drives every window. Views register with their own refresh period and
+ * are called on this thread with the latest SimulationSnapshot when it comes due. A snapshot is
+ * taken only when some view is due and the current one is older than -Dui.snapshot.ms (default
+ * 100), so a 16 ms animation and a 1 s dashboard share the same reads of the agents instead of
+ * each polling them on their own timer. Views that touch Swing components hand off to the EDT.
+ */
+public class UIRefreshCoordinator implements Runnable {
+    private static final long SNAPSHOT_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("ui.snapshot.ms", 100));
+    private static final long IDLE_MILLIS = 100;
+
+    public interface View {
+        /** Called on the coordinator thread; the snapshot may repeat between calls. */
+        void refresh(SimulationSnapshot snapshot);
+
+        long getRefreshMillis();
+    }
+
+    private final BaseAgent[] agents;
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+    private volatile SimulationSnapshot latest;
+    private volatile boolean running = true;
+
+    public UIRefreshCoordinator(List<BaseAgent> agents) {
+        this.agents = agents.toArray(new BaseAgent[0]);
+        for (BaseAgent agent : this.agents) {
+            if (agent == null) throw new IllegalArgumentException("Agent list has a null entry; was it built before hiring?");
+        }
+    }
+
+    public <V extends View> V register(V view) {
+        registrations.add(new Registration(view));
+        return view;
+    }
+
+    public void unregister(View view) {
+        registrations.removeIf(registration -> registration.view == view);
+    }
+
+    /** The most recent snapshot, or null before the first one. */
+    public SimulationSnapshot getLatest() {
+        return latest;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long now = System.nanoTime();
+            long nextDue = now + TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+            SimulationSnapshot snapshot = latest;
+            for (Registration registration : registrations) {
+                if (now - registration.due >= 0) {
+                    if (snapshot == null || now - snapshot.getTakenAtNanos() >= SNAPSHOT_NANOS) {
+                        snapshot = takeSnapshot(snapshot);
+                        latest = snapshot;
+                    }
+                    if (snapshot != null) {
+                        refresh(registration, snapshot);
+                    }
+                    // A view that overran skips the missed refreshes rather than bursting
+                    registration.due = Math.max(registration.due + registration.period, now);
+                }
+                if (registration.due - nextDue < 0) {
+                    nextDue = registration.due;
+                }
+            }
+            try {
+                long sleep = nextDue - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+                break;
+            }
+        }
+    }
+
+    // On failure views keep the previous snapshot; the loop, and every window with it, must go on
+    private SimulationSnapshot takeSnapshot(SimulationSnapshot previous) {
+        try {
+            return SimulationSnapshot.take(previous == null ? 0 : previous.getSequence() + 1, agents);
+        } catch (RuntimeException e) {
+            System.out.println("UI snapshot failed: " + e);
+            return previous;
+        }
+    }
+
+    private static void refresh(Registration registration, SimulationSnapshot snapshot) {
+        try {
+            registration.view.refresh(snapshot);
+        } catch (RuntimeException e) {
+            // One broken view must not stop the others from updating
+            System.out.println("UI view " + registration.view.getClass().getSimpleName() + " failed: " + e);
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private static class Registration {
+        final View view;
+        final long period;
+        long due;
+
+        Registration(View view) {
+            this.view = view;
+            this.period = TimeUnit.MILLISECONDS.toNanos(Math.max(1, view.getRefreshMillis()));
+            this.due = System.nanoTime();
+        }
+    }
+}
@@ -2,27 +2,31 @@ package core.ui;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.IntConsumer;
+import core.agents.AgentCensus;
+import core.agents.AgentState;
 import core.agents.BaseAgent;
 import core.agents.AgentType;
 import core.agents.AgentLocation;
+import factory.production.Workstations;
 
-public class ZonesWindow extends JFrame implements Runnable {
+public class ZonesWindow extends JFrame implements UIRefreshCoordinator.View {
+    private static final long REFRESH_MILLIS = 1000;
 
-    private final List<BaseAgent> agents;
+    private final Workstations workstations;
 
     private final JTextArea typeArea;
     private final JTextArea locationArea;
+    private final JTextArea workstationArea;
 
     private volatile boolean running = true;
 
-    public ZonesWindow(List<BaseAgent> agents) {
-        this.agents = agents;
+    /** resizeRequest receives the station count the operator applies; it must not block. */
+    public ZonesWindow(Workstations workstations, IntConsumer resizeRequest) {
+        this.workstations = workstations;
 
         setTitle("General Overview Dashboard");
-        setSize(500, 450);
+        setSize(700, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
 
@@ -30,7 +34,7 @@ public class ZonesWindow extends JFrame implements Runnable {
         title.setFont(new Font("SansSerif", Font.BOLD, 18));
         add(title, BorderLayout.NORTH);
 
-        JPanel mainPanel = new JPanel(new GridLayout(2, 1, 10, 10));
+        JPanel mainPanel = new JPanel(new GridLayout(3, 1, 10, 10));
         mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
 
         typeArea = new JTextArea();
@@ -43,45 +47,62 @@ public class ZonesWindow extends JFrame implements Runnable {
         locationArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
         mainPanel.add(new JScrollPane(locationArea));
 
+        workstationArea = new JTextArea();
+        workstationArea.setEditable(false);
+        workstationArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        mainPanel.add(new JScrollPane(workstationArea));
+
         add(mainPanel, BorderLayout.CENTER);
+
+        JPanel capacityPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JSpinner capacitySpinner = new JSpinner(new SpinnerNumberModel(workstations.getCapacity(), 1, 1000, 1));
+        JButton applyButton = new JButton("Apply");
+        applyButton.addActionListener(e -> {
+            resizeRequest.accept((Integer) capacitySpinner.getValue());
+        });
+        capacityPanel.add(new JLabel("Workstations:"));
+        capacityPanel.add(capacitySpinner);
+        capacityPanel.add(applyButton);
+        add(capacityPanel, BorderLayout.SOUTH);
+
         setVisible(true);
     }
 
+    // The counts are live; the coordinator only sets the pace
     @Override
-    public void run() {
-        while (running) {
-            try {
-                SwingUtilities.invokeLater(this::updateDashboard);
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                running = false;
-                break;
-            }
+    public void refresh(SimulationSnapshot snapshot) {
+        if (running) {
+            SwingUtilities.invokeLater(this::updateDashboard);
         }
     }
 
+    @Override
+    public long getRefreshMillis() {
+        return REFRESH_MILLIS;
+    }
+
+    // Census counts, no pass over the agents
     private void updateDashboard() {
+        AgentCensus census = BaseAgent.census();
         StringBuilder sbTypes = new StringBuilder("AGENTS BY TYPE:\n");
         StringBuilder sbLocations = new StringBuilder("AGENTS BY LOCATION:\n");
 
-        Map<AgentType, Long> byType = agents.stream()
-                .collect(Collectors.groupingBy(BaseAgent::getAgentType, Collectors.counting()));
-
         for (AgentType type : AgentType.values()) {
-            long count = byType.getOrDefault(type, 0L);
-            sbTypes.append(String.format(" • %-10s : %d%n", type, count));
+            sbTypes.append(String.format(" • %-10s : %d%n", type, census.count(type)));
         }
 
-        Map<AgentLocation, Long> byLocation = agents.stream()
-                .collect(Collectors.groupingBy(BaseAgent::getLocation, Collectors.counting()));
+        sbTypes.append("\nAGENTS BY STATE:\n");
+        for (AgentState state : AgentState.values()) {
+            sbTypes.append(String.format(" • %-12s : %d%n", state, census.count(state)));
+        }
 
         for (AgentLocation loc : AgentLocation.values()) {
-            long count = byLocation.getOrDefault(loc, 0L);
-            sbLocations.append(String.format(" • %-15s : %d%n", loc, count));
+            sbLocations.append(String.format(" • %-15s : %d%n", loc, census.count(loc)));
         }
 
         typeArea.setText(sbTypes.toString());
         locationArea.setText(sbLocations.toString());
+        workstationArea.setText("WORKSTATION POOLS:\n" + workstations.getReport());
     }
 
     public void stop() {
@@ -0,0 +1,35 @@
+package factory;
+
+import java.util.Locale;
+
+/** Where the bathroom and breakroom a factory's workers visit are served from. */
+public enum FacilityMode {
+    /** Started inside the factory process on a loopback port; nothing else to launch. */
+    EMBEDDED("Embedded servers (loopback TCP)"),
+    /** Stand-alone servers found through the facility.* system properties. */
+    EXTERNAL("External servers"),
+    /** Called directly in-process, no TCP at all. */
+    IN_PROCESS("In-process (no TCP)");
+
+    private final String label;
+
+    FacilityMode(String label) {
+        this.label = label;
+    }
+
+    /** factory.facilities=embedded|external|in_process, EMBEDDED when unset or unknown. */
+    public static FacilityMode fromProperty() {
+        String value = System.getProperty("factory.facilities", EMBEDDED.name());
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown factory.facilities '" + value + "', using " + EMBEDDED.name().toLowerCase());
+            return EMBEDDED;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
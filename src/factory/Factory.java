@@ -22,12 +22,12 @@ public class Factory {
     public LinkedList<ProductOrder> productOrders;
     public ZonesAPI zones;
     public int orderBatchSize, productsOffered, truckMaxCapacity;
-    public int transportTime, productionTime, requestTime;
+    public int transportTime, productionTime, requestTime, changeoverTime;
 
-    public Factory(int nWorkstation, int orderBatchSize, int productsOffered, int productionTime, int nFactoryWorkers, int truckMaxCapacity, int transportTime, int nDeliveryWorkers, int requestTime, ZonesAPI zones) {
+    public Factory(int nWorkstation, int orderBatchSize, int productsOffered, int productionTime, int nFactoryWorkers, int truckMaxCapacity, int transportTime, int nDeliveryWorkers, int requestTime, int changeoverTime, ZonesAPI zones) {
         this.zones = zones;
         warehouse = new Warehouse();
-        zones.setWorkstations(new Workstations(nWorkstation));
+        zones.setWorkstations(new Workstations(nWorkstation, productsOffered, changeoverTime));
         productOrders = new LinkedList<>();
 
         this.nFactoryWorkers = nFactoryWorkers;
@@ -43,12 +43,15 @@ public class Factory {
         this.transportTime = transportTime;
         this.productionTime = productionTime;
         this.requestTime = requestTime;
+        this.changeoverTime = changeoverTime;
 
         for (int i = 0; i < productsOffered; i++) {
             warehouse.inventory.add(0);
         }
 
         manager = new ManagerAgent(this);
+        // Hired here, not on the manager's thread, so the lists are complete once we return
+        manager.hireWorkers();
         manager.start();
     }
 }
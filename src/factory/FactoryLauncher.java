@@ -2,13 +2,14 @@ package factory;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
 
 public class FactoryLauncher {
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("Factory Simulation Launcher");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            frame.setSize(350, 600);
+            frame.setSize(350, 700);
             frame.setLayout(new BorderLayout());
 
             JLabel title = new JLabel("Factory Simulation Launcher", SwingConstants.CENTER);
@@ -29,11 +30,20 @@ public class FactoryLauncher {
             JTextField productsTF = createField(panel, "Types of products:", "5");
 
             JTextField workstationCpctyTF = createField(panel, "Workstation agent capacity:", "2");
+            JTextField changeoverTimeTF = createField(panel, "Workstation changeover time (ms):", "1000");
 
             JTextField transportTimeTF = createField(panel, "Time for transportation (ms):", "10000");
             JTextField timeToProduceTF = createField(panel, "Time to produce an item (ms):", "500");
             JTextField timeToRequestMaterialsTF = createField(panel, "Time to request materials (ms):", "500");
 
+            JLabel facilitiesLabel = new JLabel("Facilities:");
+            facilitiesLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+            JComboBox<FacilityMode> facilityModeCB = new JComboBox<>(FacilityMode.values());
+            facilityModeCB.setSelectedItem(FacilityMode.fromProperty());
+            facilityModeCB.setMaximumSize(new Dimension(Integer.MAX_VALUE, 30));
+            panel.add(facilitiesLabel);
+            panel.add(facilityModeCB);
+
 
             JButton startButton = new JButton("Start Simulation");
             startButton.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -56,10 +66,14 @@ public class FactoryLauncher {
                     int transportTime = Integer.parseInt(transportTimeTF.getText());
                     int productionTime = Integer.parseInt(timeToProduceTF.getText());
                     int requestTime = Integer.parseInt(timeToRequestMaterialsTF.getText());
+                    int changeoverTime = Integer.parseInt(changeoverTimeTF.getText());
+                    FacilityMode facilityMode = (FacilityMode) facilityModeCB.getSelectedItem();
 
-                    new FactoryServer(workstations, orderBatchSize, productsOffered, productionTime, workers, truckMaxCapacity, transportTime, delivery, requestTime);
+                    new FactoryServer(workstations, orderBatchSize, productsOffered, productionTime, workers, truckMaxCapacity, transportTime, delivery, requestTime, changeoverTime, facilityMode);
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(frame, "Please enter valid integers.", "Error", JOptionPane.ERROR_MESSAGE);
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(frame, "Could not start the facility servers: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
             });
 
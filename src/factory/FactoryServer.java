@@ -1,20 +1,39 @@
 package factory;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import Facility.Bathroom;
+import Facility.BreakRoom;
+import Facility.FacilityRegistry;
+import Facility.FacilityServer;
+import Facility.FacilityType;
 import core.Zones.ZonesAPI;
 import core.agents.BaseAgent;
 import core.ui.AgentStatesWindow;
+import core.ui.ChartsWindow;
 import core.ui.FactoryVisualizationWindow;
 import core.ui.InventoryWindow;
 import core.ui.ThreadStatesWindow;
+import core.ui.UIRefreshCoordinator;
 import core.ui.ZonesWindow;
 
 public class FactoryServer {
-    public FactoryServer(int workstations, int orderBatchSize, int productsOffered, int timeToProduce, int workers, int truckMaxCapacity, int transportTime, int delivery, int requestTime) {
+    public FactoryServer(int workstations, int orderBatchSize, int productsOffered, int timeToProduce, int workers, int truckMaxCapacity, int transportTime, int delivery, int requestTime, int changeoverTime, FacilityMode facilityMode) throws IOException {
         ZonesAPI zones = new ZonesAPI();
-        Factory factory = new Factory(workstations, orderBatchSize, productsOffered, timeToProduce, workers,truckMaxCapacity, transportTime, delivery, requestTime, zones);
-        new Thread(new InventoryWindow(factory.warehouse)).start();
+        if (facilityMode == FacilityMode.IN_PROCESS) {
+            zones.setBathroom(new Bathroom());
+            zones.setBreakroom(new BreakRoom());
+        } else if (facilityMode == FacilityMode.EMBEDDED) {
+            // Up before any worker exists, so no first break can race the server
+            List<String> endpoint = startEmbeddedFacilities();
+            zones.setBathroomEndpoints(endpoint);
+            zones.setBreakroomEndpoints(endpoint);
+        }
+        Factory factory = new Factory(workstations, orderBatchSize, productsOffered, timeToProduce, workers,truckMaxCapacity, transportTime, delivery, requestTime, changeoverTime, zones);
 
         ArrayList<BaseAgent> agents = new ArrayList<>();
         agents.add(factory.manager);
@@ -22,9 +41,34 @@ public class FactoryServer {
         agents.addAll(factory.workerAgents);
         agents.addAll(factory.deliveryAgents);
 
-        new Thread(new AgentStatesWindow(agents)).start();
-        new Thread(new ThreadStatesWindow(agents)).start();
-        new Thread(new ZonesWindow(agents)).start();
-        new Thread(new FactoryVisualizationWindow(agents)).start();
+        // One thread and one snapshot per tick for all windows, each refreshed at its own rate
+        UIRefreshCoordinator ui = new UIRefreshCoordinator(agents);
+        ui.register(new InventoryWindow(factory.warehouse));
+        ui.register(new AgentStatesWindow(agents));
+        ui.register(new ThreadStatesWindow());
+        ui.register(new ZonesWindow(zones.getWorkstations(), factory.manager::requestWorkstationCapacity));
+        ui.register(new FactoryVisualizationWindow(agents));
+
+        // History is kept whether or not anyone is looking at the charts
+        ProductionSampler sampler = new ProductionSampler(factory);
+        Thread samplerThread = new Thread(sampler, "ProductionSampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+        ui.register(new ChartsWindow(sampler.getStore()));
+        new Thread(ui, "UIRefresh").start();
+    }
+
+    /**
+     * One FacilityServer with the bathroom and breakroom on loopback, on facility.embedded.port
+     * or a free port when that is unset, and the endpoint workers should use to reach it.
+     */
+    private static List<String> startEmbeddedFacilities() throws IOException {
+        long start = System.nanoTime();
+        FacilityRegistry registry = new FacilityRegistry()
+                .register(FacilityType.BATHROOM.name(), new Bathroom())
+                .register(FacilityType.BREAKROOM.name(), new BreakRoom());
+        FacilityServer server = FacilityServer.startEmbedded(Integer.getInteger("facility.embedded.port", 0), registry);
+        System.out.printf("Embedded facilities ready in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        return Collections.singletonList(InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getLocalPort());
     }
 }
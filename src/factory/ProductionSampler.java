@@ -0,0 +1,118 @@
+package factory;
+
+import java.util.concurrent.TimeUnit;
+
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+import core.agents.AgentStatus;
+import core.metrics.TimeSeriesStore;
+import factory.agents.DeliveryAgent;
+import factory.production.ProductionStats;
+
+/**
+ * Records the factory's vital signs into a TimeSeriesStore once per simulated second (the
+ * simulation runs in real time, so one wall-clock second): orders completed over the last
+ * minute, raw material in the warehouse, orders in progress, workstation and truck utilization.
+ * The store keeps -Dmetrics.history.hours of history (default 4).
+ */
+public class ProductionSampler implements Runnable {
+    public static final int ORDERS_PER_MINUTE = 0;
+    public static final int RAW_MATERIAL = 1;
+    public static final int WORK_IN_PROGRESS = 2;
+    public static final int WORKSTATION_UTILIZATION = 3;
+    public static final int TRUCK_UTILIZATION = 4;
+
+    private static final long PERIOD_MILLIS = 1000;
+    private static final int HISTORY_HOURS = Integer.getInteger("metrics.history.hours", 4);
+    private static final int MINUTE = 60;
+
+    private final Factory factory;
+    private final DeliveryAgent[] trucks;
+    private final TimeSeriesStore store;
+    private final double[] row;
+    // Completed-order totals of the last minute of samples, to turn the total into a rate
+    private final long[] completedRing = new long[MINUTE + 1];
+    private int samples;
+    private volatile boolean running = true;
+
+    public ProductionSampler(Factory factory) {
+        this.factory = factory;
+        // Copied once: Factory's constructor has finished hiring, and the list never changes
+        // after, so the sampler thread reads its own array instead of a shared ArrayList
+        if (factory.deliveryAgents.size() != factory.nDeliveryWorkers) {
+            throw new IllegalStateException("Sampler built before the trucks were hired");
+        }
+        this.trucks = factory.deliveryAgents.toArray(new DeliveryAgent[0]);
+        int capacity = (int) Math.max(1, TimeUnit.HOURS.toMillis(HISTORY_HOURS) / PERIOD_MILLIS);
+        // Same order as the series indices above
+        this.store = new TimeSeriesStore(PERIOD_MILLIS, capacity,
+                "Orders completed / min", "Raw material (units)", "Work in progress (orders)",
+                "Workstation utilization (%)", "Truck utilization (%)");
+        this.row = new double[store.getSeriesCount()];
+    }
+
+    public TimeSeriesStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        while (running) {
+            // A failed sample leaves a gap; letting it end the thread would flatline every chart
+            try {
+                sample();
+            } catch (RuntimeException e) {
+                System.err.println("ProductionSampler: sample failed: " + e);
+            }
+            // Fixed rate: a slow sample does not push the following ones back
+            next += TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS);
+            try {
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } else {
+                    next = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+                break;
+            }
+        }
+    }
+
+    private void sample() {
+        ProductionStats stats = factory.zones.getProductionStats();
+        long completed = stats.getOrdersCompleted();
+        completedRing[samples % completedRing.length] = completed;
+        samples++;
+        // Fewer than 60 s of history early on: scale what there is up to a minute
+        int span = Math.min(samples - 1, MINUTE);
+        long before = completedRing[(samples - 1 - span) % completedRing.length];
+        row[ORDERS_PER_MINUTE] = span == 0 ? 0 : (completed - before) * (double) MINUTE / span;
+
+        // Slot 0 holds raw material (ProductOrder.getSourceMaterialIndex)
+        row[RAW_MATERIAL] = factory.warehouse.inventory.get(0);
+        row[WORK_IN_PROGRESS] = stats.getWorkInProgress();
+        row[WORKSTATION_UTILIZATION] = 100.0 * factory.zones.getWorkstations().getCurrentUtilization();
+        row[TRUCK_UTILIZATION] = 100.0 * truckUtilization();
+        store.record(System.currentTimeMillis(), row);
+    }
+
+    // A truck parked at the loading deck is idle; anywhere else, or moving, it is on a job
+    private double truckUtilization() {
+        if (trucks.length == 0) return 0.0;
+        int busy = 0;
+        for (DeliveryAgent truck : trucks) {
+            AgentStatus status = truck.getStatus();
+            if (status.getLocation() != AgentLocation.LOADING_DECK || status.getState() != AgentState.WAITING) {
+                busy++;
+            }
+        }
+        return (double) busy / trucks.length;
+    }
+
+    public void stop() {
+        running = false;
+    }
+}
@@ -1,12 +1,23 @@
 package factory.agents;
 
+import java.util.List;
+
 public class BathroomConnection extends FacilityConnection {
-    public BathroomConnection(String host, int port, WorkerAgent agent) {
+    public BathroomConnection(String host, int port, FacilityListener agent) {
         super(host, port, agent);
     }
 
+    public BathroomConnection(FacilityMultiplexer multiplexer, FacilityListener agent) {
+        super(multiplexer, agent);
+    }
+
+    public BathroomConnection(List<String> endpoints, FacilityListener agent) {
+        super(endpoints, agent);
+    }
+
+    @Override
     public void requestBreak() {
-        sendLine("REQUEST_BATHROOM");
+        sendRequest("REQUEST_BATHROOM");
     }
 
     @Override
@@ -1,12 +1,23 @@
 package factory.agents;
 
+import java.util.List;
+
 public class BreakroomConnection extends FacilityConnection {
-    public BreakroomConnection(String host, int port, WorkerAgent agent) {
+    public BreakroomConnection(String host, int port, FacilityListener agent) {
         super(host, port, agent);
     }
 
+    public BreakroomConnection(FacilityMultiplexer multiplexer, FacilityListener agent) {
+        super(multiplexer, agent);
+    }
+
+    public BreakroomConnection(List<String> endpoints, FacilityListener agent) {
+        super(endpoints, agent);
+    }
+
+    @Override
     public void requestBreak() {
-        sendLine("REQUEST_BREAKROOM");
+        sendRequest("REQUEST_BREAKROOM");
     }
 
     @Override
@@ -0,0 +1,10 @@
+package factory.agents;
+
+/**
+ * What a worker needs from a facility, whether it is reached over TCP or called in-process.
+ */
+public interface FacilityClient {
+    void requestBreak();
+
+    void close();
+}
@@ -1,161 +1,257 @@
 package factory.agents;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import Facility.AdmissionPriority;
 import core.agents.AgentLocation;
 import core.agents.AgentState;
 
-public abstract class FacilityConnection {
-    protected final WorkerAgent agent;
-    private final String host;
-    private final int port;
+/**
+ * One agent's view of a facility server. The socket itself belongs to the process-wide
+ * FacilityMultiplexer; this class tags requests with the agent's ID and turns the replies
+ * routed back to it into agent callbacks.
+ *
+ * Each break request gets a request ID and stays pending until the facility finishes it. If the
+ * shared connection drops, the multiplexer reconnects and resends pending requests with the
+ * same ID, which the server recognises, so a blip never books a second slot. If the server
+ * stays unreachable, or does not know the facility, the agent is sent back to the factory
+ * floor instead of waiting forever.
+ *
+ * Given several endpoints, the agent is placed on one by consistent hashing of its ID and fails
+ * over along the ring: immediately if its node refuses the request, or after
+ * facility.failover.ms (2 s by default) of failed reconnects mid-visit.
+ */
+public abstract class FacilityConnection implements FacilityClient {
+    // Unique across restarts of this process, so a server never mistakes a new request for an old one
+    private static final AtomicLong REQUEST_IDS = new AtomicLong(System.currentTimeMillis() * 1000);
+    private static final long FAILOVER_MILLIS = Long.getLong("facility.failover.ms", 2000);
+    private static final long GIVE_UP_MILLIS = Long.getLong("facility.reconnect.giveup.ms", 30_000);
 
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    protected final FacilityListener agent;
+    // This agent's nodes in ring order; the first is its home node
+    private final List<FacilityMultiplexer> nodes;
 
-    private Thread listenerThread;
-    private volatile boolean running = false;
+    // Guarded by this
+    private int nodeIndex;
+    private String pendingCommand;
+    private long pendingRequestId;
+    private AdmissionPriority pendingPriority;
+    private long unreachableSince;
 
-    protected FacilityConnection(String host, int port, WorkerAgent agent) {
-        this.host = host;
-        this.port = port;
-        this.agent = agent;
+    protected FacilityConnection(String host, int port, FacilityListener agent) {
+        this(FacilityMultiplexer.get(host, port), agent);
     }
 
-    protected synchronized void ensureConnected() throws IOException {
-        if (socket != null && socket.isConnected() && !socket.isClosed()) {
-            return;
-        }
-
-        socket = new Socket(host, port);
-        out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    protected FacilityConnection(FacilityMultiplexer multiplexer, FacilityListener agent) {
+        this(agent, Collections.singletonList(multiplexer));
+    }
 
-        sendHello();
+    /** Shards over several servers; endpoints are "host:port". */
+    protected FacilityConnection(List<String> endpoints, FacilityListener agent) {
+        this(agent, FacilityMultiplexer.ring(endpoints).preference(agent.getThreadID()));
+    }
 
-        running = true;
-        listenerThread = new Thread(this::listenLoop,
-                getClass().getSimpleName() + "-Listener-" + agent.getThreadID());
-        listenerThread.setDaemon(true);
-        listenerThread.start();
+    private FacilityConnection(FacilityListener agent, List<FacilityMultiplexer> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("No facility endpoints");
+        }
+        this.agent = agent;
+        this.nodes = nodes;
     }
 
-    protected void sendHello() {
-        sendLine("HELLO " + agent.getThreadID());
+    private synchronized FacilityMultiplexer current() {
+        return nodes.get(nodeIndex);
     }
 
-    protected void sendLine(String line) {
-        try {
-            ensureConnected();
-            out.println(line);
-        } catch (IOException e) {
-            System.err.println("[" + agent.getThreadID() + "] Failed to send line to facility: " + e.getMessage());
+    /**
+     * Sends "command agentId requestId priority" to the agent's home node, or the next one that takes it,
+     * and starts routing replies here. A request no node takes is not lost: it stays pending on
+     * the home node and goes out when that reconnects.
+     */
+    protected void sendRequest(String command) {
+        long requestId = REQUEST_IDS.incrementAndGet();
+        AdmissionPriority priority = agent.getBreakPriority();
+        synchronized (this) {
+            pendingCommand = command;
+            pendingRequestId = requestId;
+            pendingPriority = priority;
+            unreachableSince = 0;
         }
+        dispatch(0);
     }
 
-    public synchronized void close() {
-        System.out.println("Closing server connection");
-        running = false;
+    /** Tries every node once, starting at index start; a node that takes the request keeps it. */
+    private void dispatch(int start) {
+        String command;
+        long requestId;
+        AdmissionPriority priority;
+        synchronized (this) {
+            command = pendingCommand;
+            requestId = pendingRequestId;
+            priority = pendingPriority;
+        }
+        if (command == null) return;
 
-        try {
-            if (out != null && socket != null && !socket.isClosed() && socket.isConnected()) {
-                out.println("QUIT");
-                out.flush();
+        for (int i = 0; i < nodes.size(); i++) {
+            int index = (start + i) % nodes.size();
+            FacilityMultiplexer node = moveTo(index);
+            try {
+                node.request(command, agent.getThreadID(), requestId, priority);
+                synchronized (this) {
+                    unreachableSince = 0;
+                }
+                return;
+            } catch (IOException e) {
+                System.err.println("[" + agent.getThreadID() + "] Facility " + node + " did not take the request: " + e.getMessage());
             }
-        } catch (Exception e) {
-            System.out.println("[" + agent.getThreadID() + "] Could not send QUIT: " + e.getMessage());
         }
+        synchronized (this) {
+            if (unreachableSince == 0) unreachableSince = System.currentTimeMillis();
+        }
+        moveTo(start % nodes.size()).reconnectLater();
+    }
 
-        try {
-            if (in != null) {
-                in.close();
-            }
-        } catch (IOException ignored) {
+    // Replies and resends follow the agent to its new node
+    private FacilityMultiplexer moveTo(int index) {
+        FacilityMultiplexer previous;
+        FacilityMultiplexer next;
+        synchronized (this) {
+            previous = nodes.get(nodeIndex);
+            nodeIndex = index;
+            next = nodes.get(index);
+        }
+        if (previous != next) {
+            previous.untrack(this);
+            previous.unregister(agent.getThreadID(), this);
         }
+        next.register(agent.getThreadID(), this);
+        next.track(this);
+        return next;
+    }
 
-        try {
-            if (out != null) {
-                out.close();
+    /** Resends the pending request, if any, with its original ID. Called after a reconnect. */
+    void resend() throws IOException {
+        String command;
+        long requestId;
+        AdmissionPriority priority;
+        FacilityMultiplexer node;
+        synchronized (this) {
+            command = pendingCommand;
+            requestId = pendingRequestId;
+            priority = pendingPriority;
+            node = nodes.get(nodeIndex);
+        }
+        if (command != null) {
+            node.register(agent.getThreadID(), this);
+            node.request(command, agent.getThreadID(), requestId, priority);
+            synchronized (this) {
+                unreachableSince = 0;
             }
-        } catch (Exception ignored) {
         }
+    }
 
-        try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
-        } catch (IOException ignored) {
+    /**
+     * Called by node's reconnect loop after each failed attempt; elapsedMillis is how long that
+     * node has been unreachable. Fails over along the ring, and gives up once no node has taken
+     * the request for GIVE_UP_MILLIS.
+     */
+    void reconnectFailed(FacilityMultiplexer node, long elapsedMillis) {
+        int next;
+        boolean giveUp;
+        synchronized (this) {
+            if (pendingCommand == null || nodes.get(nodeIndex) != node) return;
+            long now = System.currentTimeMillis();
+            if (unreachableSince == 0) unreachableSince = now - elapsedMillis;
+            giveUp = now - unreachableSince >= GIVE_UP_MILLIS;
+            next = nodes.size() > 1 && elapsedMillis >= FAILOVER_MILLIS ? (nodeIndex + 1) % nodes.size() : -1;
         }
+        if (giveUp) {
+            abandon("facility server " + node + " unreachable");
+        } else if (next >= 0) {
+            // The old node may have held a slot for this visit, but it is gone with that node
+            dispatch(next);
+        }
+    }
 
-        socket = null;
-        out = null;
-        in = null;
+    synchronized boolean hasPendingRequest() {
+        return pendingCommand != null;
+    }
 
-        if (listenerThread != null && listenerThread.isAlive()) {
-            try {
-                listenerThread.join(1000);
-            } catch (InterruptedException ignored) {
-            }
+    private void clearPending() {
+        synchronized (this) {
+            pendingCommand = null;
         }
-        listenerThread = null;
+        current().untrack(this);
     }
 
-    private void listenLoop() {
-        try {
-            String line;
-            while (running && in != null && (line = in.readLine()) != null) {
-                handleServerLine(line.trim());
-            }
-        } catch (IOException e) {
-            if (running) {
-                System.out
-                        .println("[" + agent.getThreadID() + "] Facility server connection closed: " + e.getMessage());
-            }
-        } finally {
-            // Ensure resources are cleaned if server disconnects
-            close();
-        }
+    /**
+     * Gives up on the pending request and walks the agent back to the factory floor, the same
+     * way a finished break would, followed by a BREAK_ABANDONED event.
+     */
+    void abandon(String reason) {
+        if (!hasPendingRequest()) return;
+        clearPending();
+        System.out.println("[" + agent.getThreadID() + "] Break request abandoned: " + reason);
+        agent.updateStateFromServer(AgentState.IDLE);
+        agent.updateLocationFromServer(AgentLocation.FACTORY);
+        handleEventFromServer("BREAK_ABANDONED", null);
     }
 
-    private void handleServerLine(String line) {
-        if (line.isEmpty())
-            return;
+    /** Stops routing replies to this agent; the shared connection stays open. */
+    public void close() {
+        clearPending();
+        current().unregister(agent.getThreadID(), this);
+    }
 
-        String[] parts = line.split("\\s+");
+    void handleServerMessage(String[] parts) {
         String cmd = parts[0];
 
         switch (cmd) {
-            case "STATE": {
-                if (parts.length >= 3 && parts[1].equals(agent.getThreadID())) {
-                    AgentState newState = AgentState.valueOf(parts[2]);
-                    agent.updateStateFromServer(newState);
-                }
+            case "STATE":
+                handleState(AgentState.valueOf(parts[2]));
                 break;
-            }
-            case "LOCATION": {
-                if (parts.length >= 3 && parts[1].equals(agent.getThreadID())) {
-                    AgentLocation newLoc = AgentLocation.valueOf(parts[2]);
-                    agent.updateLocationFromServer(newLoc);
-                }
+            case "LOCATION":
+                handleLocation(AgentLocation.valueOf(parts[2]));
                 break;
-            }
-            case "EVENT": {
-                if (parts.length >= 3 && parts[1].equals(agent.getThreadID())) {
-                    String eventType = parts[2];
-                    handleEventFromServer(eventType, parts);
-                }
+            case "EVENT":
+                onEvent(parts[2], parts);
                 break;
-            }
             default:
                 handleUnknownCommand(cmd, parts);
         }
     }
 
+    // Binary frames arrive already decoded and skip the line split
+    void handleState(AgentState state) {
+        agent.updateStateFromServer(state);
+    }
+
+    void handleLocation(AgentLocation location) {
+        agent.updateLocationFromServer(location);
+    }
+
+    void handleEvent(String eventType) {
+        onEvent(eventType, null);
+    }
+
+    private void onEvent(String eventType, String[] parts) {
+        if (eventType.equals("BREAK_COMPLETE")) {
+            clearPending();
+        } else if (eventType.startsWith("UNKNOWN_FACILITY")) {
+            // Retrying cannot help; do not leave the agent standing at the door
+            abandon(eventType);
+            return;
+        }
+        handleEventFromServer(eventType, parts);
+    }
+
     /**
-     * Called when an EVENT line is received for this agent.
-     * Subclasses should interpret eventType and react accordingly.
+     * Called when an EVENT is received for this agent.
+     * Subclasses should interpret eventType and react accordingly; parts is the split text
+     * line, or null when the event came in a binary frame.
      */
     protected abstract void handleEventFromServer(String eventType, String[] parts);
 
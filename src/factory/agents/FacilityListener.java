@@ -0,0 +1,23 @@
+package factory.agents;
+
+import Facility.AdmissionPriority;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+
+/**
+ * Receiver of the STATE / LOCATION / EVENT messages a facility sends for one agent.
+ */
+public interface FacilityListener {
+    String getThreadID();
+
+    void updateStateFromServer(AgentState newState);
+
+    void updateLocationFromServer(AgentLocation newLocation);
+
+    void handleServerEvent(String eventType);
+
+    /** Queue class for this agent's next break request; asked once per request. */
+    default AdmissionPriority getBreakPriority() {
+        return AdmissionPriority.NORMAL;
+    }
+}
@@ -0,0 +1,539 @@
+package factory.agents;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import Facility.AdmissionPriority;
+import Facility.BinaryProtocol;
+
+/**
+ * One persistent connection per facility server for the whole factory process. Every agent's
+ * requests carry its ID, and the STATE / LOCATION / EVENT replies are routed back to the agent's
+ * FacilityConnection by the ID in the second field. Sockets and listener threads therefore stay
+ * at one per server no matter how many workers there are.
+ *
+ * With -Dfacility.protocol=binary the connection negotiates BinaryProtocol frames instead: each
+ * agent gets a small number, bound once per socket, and replies are decoded from a reused buffer
+ * and routed by array index. Servers that do not answer the BINARY hello are spoken to in text.
+ *
+ * When the connection drops while requests are pending, a reconnect thread retries with
+ * jittered exponential backoff and resends them, telling each pending FacilityConnection about
+ * every failed attempt so it can fail over or give up. A server that refused a connection is
+ * treated as down for a second, so new requests move on without waiting for a connect.
+ *
+ * Connecting happens outside the monitor: one thread opens the socket and says hello while
+ * requests that need the connection wait for that attempt, and registration, routing and
+ * disconnect handling carry on. The monitor is held only to swap the socket in and to write.
+ */
+public class FacilityMultiplexer {
+    private static final Map<String, FacilityMultiplexer> INSTANCES = new ConcurrentHashMap<>();
+    private static final String REQUEST_PREFIX = "REQUEST_";
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long BACKOFF_BASE_MILLIS = 100;
+    private static final long BACKOFF_MAX_MILLIS = 5000;
+    private static final long DOWN_MILLIS = 1000;
+    private static final Map<String, HashRing<FacilityMultiplexer>> RINGS = new ConcurrentHashMap<>();
+    private static final boolean BINARY_DEFAULT = "binary".equalsIgnoreCase(System.getProperty("facility.protocol"));
+
+    private final String host;
+    private final int port;
+    private final boolean binaryRequested;
+    private final Map<String, FacilityConnection> routes;
+    private final Set<FacilityConnection> pending;
+    private final AtomicBoolean reconnecting;
+    private volatile boolean closing;
+    private volatile long downUntil;
+
+    // Agent and facility numbers for binary mode; stable for the life of the process
+    private final Map<String, Integer> ids;
+    private final Map<String, Integer> facilityIds;
+    private volatile FacilityConnection[] routesById;
+
+    private Socket socket;
+    private OutputStream out;
+    private boolean binary;
+    private BitSet bound;
+    private BitSet opened;
+    private Thread listenerThread;
+    // The attempt in progress, if any; guarded by the monitor
+    private CompletableFuture<Void> connecting;
+
+    private FacilityMultiplexer(String host, int port, boolean binaryRequested) {
+        this.host = host;
+        this.port = port;
+        this.binaryRequested = binaryRequested;
+        this.routes = new ConcurrentHashMap<>();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.reconnecting = new AtomicBoolean();
+        this.ids = new ConcurrentHashMap<>();
+        this.facilityIds = new ConcurrentHashMap<>();
+        this.routesById = new FacilityConnection[16];
+    }
+
+    public static FacilityMultiplexer get(String host, int port) {
+        return get(host, port, BINARY_DEFAULT);
+    }
+
+    public static FacilityMultiplexer get(String host, int port, boolean binary) {
+        String key = host + ":" + port + (binary ? "/binary" : "");
+        return INSTANCES.computeIfAbsent(key, k -> new FacilityMultiplexer(host, port, binary));
+    }
+
+    /** The ring over "host:port" endpoints, shared by every connection given the same list. */
+    static HashRing<FacilityMultiplexer> ring(List<String> endpoints) {
+        return RINGS.computeIfAbsent(String.join(",", endpoints), key -> {
+            Map<String, FacilityMultiplexer> nodes = new LinkedHashMap<>();
+            for (String endpoint : endpoints) {
+                int colon = endpoint.lastIndexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("Expected host:port, got " + endpoint);
+                }
+                String host = endpoint.substring(0, colon).trim();
+                int port = Integer.parseInt(endpoint.substring(colon + 1).trim());
+                nodes.put(host + ":" + port, get(host, port));
+            }
+            return new HashRing<>(nodes);
+        });
+    }
+
+    synchronized void register(String agentId, FacilityConnection connection) {
+        routes.put(agentId, connection);
+        int id = idFor(agentId);
+        FacilityConnection[] table = routesById;
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, Math.max(id + 1, table.length * 2));
+        }
+        table[id] = connection;
+        routesById = table;
+    }
+
+    synchronized void unregister(String agentId, FacilityConnection connection) {
+        routes.remove(agentId, connection);
+        Integer id = ids.get(agentId);
+        if (id != null && routesById[id] == connection) {
+            routesById[id] = null;
+        }
+    }
+
+    /** Keeps a connection's request to be resent after a reconnect until untracked. */
+    void track(FacilityConnection connection) {
+        pending.add(connection);
+    }
+
+    void untrack(FacilityConnection connection) {
+        pending.remove(connection);
+    }
+
+    private int idFor(String agentId) {
+        return number(ids, agentId);
+    }
+
+    private static int number(Map<String, Integer> numbers, String name) {
+        Integer id = numbers.get(name);
+        if (id == null) {
+            id = numbers.size();
+            numbers.put(name, id);
+        }
+        return id;
+    }
+
+    /** Whether the current connection speaks binary frames. */
+    public synchronized boolean isBinary() {
+        return binary;
+    }
+
+    private void ensureConnected() throws IOException {
+        CompletableFuture<Void> attempt;
+        boolean ours;
+        synchronized (this) {
+            if (socket != null && socket.isConnected() && !socket.isClosed()) {
+                return;
+            }
+            ours = connecting == null;
+            if (ours) {
+                connecting = new CompletableFuture<>();
+            }
+            attempt = connecting;
+        }
+        if (!ours) {
+            awaitConnect(attempt);
+            return;
+        }
+        try {
+            connect();
+            attempt.complete(null);
+        } catch (IOException | RuntimeException e) {
+            attempt.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                connecting = null;
+            }
+        }
+    }
+
+    private static void awaitConnect(CompletableFuture<Void> attempt) throws IOException {
+        try {
+            attempt.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for a connect");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            throw new IOException("connect failed", cause);
+        }
+    }
+
+    // Blocks for up to two timeouts without the monitor, then swaps the new socket in under it
+    private void connect() throws IOException {
+        Socket opening = new Socket();
+        try {
+            opening.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            closeQuietly(opening);
+            downUntil = System.currentTimeMillis() + DOWN_MILLIS;
+            throw e;
+        }
+
+        OutputStream output;
+        InputStream in;
+        boolean speaksBinary = false;
+        try {
+            opening.setTcpNoDelay(true);
+            // A server that accepts but never answers the hello must not hold the attempt forever
+            opening.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            output = opening.getOutputStream();
+            in = opening.getInputStream();
+            String hello = "HELLO " + processName();
+            if (binaryRequested) {
+                writeLine(output, hello + " " + BinaryProtocol.HELLO_TOKEN);
+                // Read the reply byte by byte so nothing after it is swallowed by a reader
+                String reply = readLine(in);
+                speaksBinary = reply != null && reply.endsWith("HELLO_OK " + BinaryProtocol.HELLO_TOKEN);
+            } else {
+                writeLine(output, hello);
+            }
+            opening.setSoTimeout(0);
+        } catch (IOException e) {
+            closeQuietly(opening);
+            throw e;
+        }
+
+        Runnable loop;
+        if (speaksBinary) {
+            DataInputStream frames = new DataInputStream(new BufferedInputStream(in));
+            loop = () -> listenFrames(opening, frames);
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            loop = () -> listenLoop(opening, reader);
+        }
+
+        synchronized (this) {
+            if (closing) {
+                closeQuietly(opening);
+                throw new IOException("closed while connecting to " + host + ":" + port);
+            }
+            socket = opening;
+            out = output;
+            binary = speaksBinary;
+            bound = new BitSet();
+            opened = new BitSet();
+            listenerThread = new Thread(loop, "FacilityMultiplexer-" + host + ":" + port);
+            listenerThread.setDaemon(true);
+            listenerThread.start();
+        }
+    }
+
+    /**
+     * Sends "command agentId requestId priority", or on a binary connection the BIND / OPEN frames it
+     * still needs followed by a REQUEST frame. The facility is the command's REQUEST_&lt;NAME&gt;
+     * suffix.
+     */
+    void request(String command, String agentId, long requestId, AdmissionPriority priority) throws IOException {
+        closing = false;
+        if (!isConnected() && System.currentTimeMillis() < downUntil) {
+            throw new IOException("marked down after a failed connect");
+        }
+        ensureConnected();
+        synchronized (this) {
+            send(command, agentId, requestId, priority);
+        }
+    }
+
+    // Holds the monitor; the connection may have dropped since ensureConnected returned
+    private void send(String command, String agentId, long requestId, AdmissionPriority priority) throws IOException {
+        if (out == null) {
+            throw new IOException("connection to " + host + ":" + port + " dropped before the request was sent");
+        }
+        if (binary && idFor(agentId) > BinaryProtocol.MAX_AGENT) {
+            throw new IOException("more than " + (BinaryProtocol.MAX_AGENT + 1) + " agents on " + host + ":" + port);
+        }
+        try {
+            if (!binary) {
+                writeLine(command + " " + agentId + " " + requestId + " " + priority.name());
+                return;
+            }
+            int id = idFor(agentId);
+            if (!bound.get(id)) {
+                write(BinaryProtocol.encodeBind(id, agentId));
+                bound.set(id);
+            }
+            String facility = command.startsWith(REQUEST_PREFIX) ? command.substring(REQUEST_PREFIX.length()) : command;
+            int facilityId = number(facilityIds, facility);
+            if (!opened.get(facilityId)) {
+                write(BinaryProtocol.encodeOpen(facilityId, facility));
+                opened.set(facilityId);
+            }
+            write(BinaryProtocol.encodeRequest(id, facilityId, requestId, priority));
+        } catch (IOException e) {
+            disconnect();
+            throw new IOException("write to " + host + ":" + port + " failed", e);
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        writeLine(out, line);
+    }
+
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        out.write(frame.array(), frame.position(), frame.remaining());
+        out.flush();
+    }
+
+    private synchronized void disconnect() {
+        if (socket != null) {
+            closeQuietly(socket);
+        }
+        socket = null;
+        out = null;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** Sends QUIT and closes the shared connection; the next request reconnects. */
+    public synchronized void close() {
+        closing = true;
+        if (out != null) {
+            try {
+                if (binary) {
+                    write(BinaryProtocol.encodeQuit());
+                } else {
+                    writeLine("QUIT");
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        disconnect();
+    }
+
+    private void listenLoop(Socket mine, BufferedReader reader) {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // One bad message must not silence every agent sharing this listener
+                try {
+                    route(line.trim());
+                } catch (RuntimeException e) {
+                    System.err.println("Facility server " + host + ":" + port + ": could not handle '" + line.trim() + "': " + e);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Facility server " + host + ":" + port + " connection closed: " + e.getMessage());
+        } finally {
+            disconnectIfCurrent(mine);
+        }
+    }
+
+    private void listenFrames(Socket mine, DataInputStream in) {
+        byte[] bytes = new byte[BinaryProtocol.MAX_FRAME];
+        ByteBuffer frame = ByteBuffer.wrap(bytes);
+        try {
+            while (true) {
+                int length = in.readUnsignedShort();
+                if (length == 0 || length > bytes.length) {
+                    throw new IOException("bad frame length " + length);
+                }
+                in.readFully(bytes, 0, length);
+                frame.clear();
+                frame.limit(length);
+                try {
+                    routeFrame(frame);
+                } catch (RuntimeException e) {
+                    System.err.println("Facility server " + host + ":" + port + ": could not handle frame of type " + bytes[0] + ": " + e);
+                }
+            }
+        } catch (EOFException e) {
+            System.out.println("Facility server " + host + ":" + port + " connection closed");
+        } catch (IOException e) {
+            System.out.println("Facility server " + host + ":" + port + " connection closed: " + e.getMessage());
+        } finally {
+            disconnectIfCurrent(mine);
+        }
+    }
+
+    private void disconnectIfCurrent(Socket mine) {
+        synchronized (this) {
+            if (socket != mine) {
+                return;
+            }
+            disconnect();
+        }
+        reconnectLater();
+    }
+
+    private synchronized boolean isConnected() {
+        return socket != null;
+    }
+
+    /** Starts the reconnect thread if requests are waiting for a connection and none is running. */
+    void reconnectLater() {
+        if (closing || pending.isEmpty() || !reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(this::reconnectLoop, "FacilityReconnect-" + host + ":" + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void reconnectLoop() {
+        long started = System.currentTimeMillis();
+        try {
+            for (int attempt = 0; !closing && !pending.isEmpty(); attempt++) {
+                Thread.sleep(backoffMillis(attempt));
+                try {
+                    ensureConnected();
+                    int resent = 0;
+                    for (FacilityConnection connection : pending) {
+                        connection.resend();
+                        resent++;
+                    }
+                    System.out.println("Facility server " + host + ":" + port + " reconnected, resent " + resent + " requests");
+                    return;
+                } catch (IOException e) {
+                    disconnect();
+                    long elapsed = System.currentTimeMillis() - started;
+                    for (FacilityConnection connection : pending) {
+                        connection.reconnectFailed(this, elapsed);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reconnecting.set(false);
+            // A drop between the last attempt and clearing the flag would otherwise go unnoticed
+            if (!isConnected()) {
+                reconnectLater();
+            }
+        }
+    }
+
+    // Equal jitter: half the exponential step, plus up to the other half at random
+    private static long backoffMillis(int attempt) {
+        long step = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt, 20));
+        return step / 2 + ThreadLocalRandom.current().nextLong(step / 2 + 1);
+    }
+
+    private void route(String line) {
+        if (line.isEmpty())
+            return;
+
+        String[] parts = line.split("\\s+");
+        if (parts.length < 3)
+            return;
+
+        FacilityConnection connection = routes.get(parts[1]);
+        if (connection != null) {
+            connection.handleServerMessage(parts);
+        }
+    }
+
+    // Runs for every reply; nothing here allocates except the rare EVENT_TEXT string
+    private void routeFrame(ByteBuffer frame) {
+        byte type = frame.get();
+        int id = frame.getInt();
+        FacilityConnection[] table = routesById;
+        FacilityConnection connection = id >= 0 && id < table.length ? table[id] : null;
+        if (connection == null)
+            return;
+
+        switch (type) {
+            case BinaryProtocol.STATE:
+                connection.handleState(BinaryProtocol.state(frame.get() & 0xFF));
+                break;
+            case BinaryProtocol.LOCATION:
+                connection.handleLocation(BinaryProtocol.location(frame.get() & 0xFF));
+                break;
+            case BinaryProtocol.EVENT: {
+                String event = BinaryProtocol.event(frame.get() & 0xFF);
+                if (event != null) {
+                    connection.handleEvent(event);
+                }
+                break;
+            }
+            case BinaryProtocol.EVENT_TEXT: {
+                int length = frame.getShort() & 0xFFFF;
+                String event = new String(frame.array(), frame.position(), length, StandardCharsets.UTF_8);
+                connection.handleEvent(event);
+                break;
+            }
+            default:
+                // newer server; ignore what we do not understand
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.append((char) b);
+        }
+        return b == -1 && line.length() == 0 ? null : line.toString().trim();
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+
+    private static String processName() {
+        // "pid@host"; spaces would break the line protocol
+        return "factory-" + ManagementFactory.getRuntimeMXBean().getName().replaceAll("\\s+", "_");
+    }
+}
@@ -0,0 +1,65 @@
+package factory.agents;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring over a fixed set of nodes. Each node is placed at many virtual points so
+ * keys spread evenly, and adding or removing a node only moves the keys next to its points.
+ * A key's preference list is every node in ring order starting at the key's position, so the
+ * second entry is where that key fails over to.
+ */
+class HashRing<T> {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, T> ring;
+    private final int nodeCount;
+
+    HashRing(Map<String, T> nodes) {
+        this.ring = new TreeMap<>();
+        this.nodeCount = nodes.size();
+        for (Map.Entry<String, T> node : nodes.entrySet()) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(node.getKey() + "#" + i), node.getValue());
+            }
+        }
+    }
+
+    /** Every node, nearest to key first. */
+    List<T> preference(String key) {
+        if (ring.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<T> nodes = new ArrayList<>(nodeCount);
+        long point = hash(key);
+        collect(ring.tailMap(point, true).values(), nodes);
+        collect(ring.headMap(point, false).values(), nodes);
+        return nodes;
+    }
+
+    private void collect(Iterable<T> points, List<T> nodes) {
+        for (T node : points) {
+            if (nodes.size() == nodeCount) return;
+            if (!nodes.contains(node)) nodes.add(node);
+        }
+    }
+
+    // 64-bit FNV-1a with a murmur finalizer; String.hashCode clusters similar names like "Worker-12"
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -31,7 +31,7 @@ public class InventoryAgent extends BaseAgent {
     protected void processNextState() {
         boolean anyAgentAvailable = false;
         for(DeliveryAgent da : deliveryAgents) {
-            if(da.getLocation() == AgentLocation.LOADING_DECK && da.getCurrentOrder() == 0) {
+            if(da.getStatus().getLocation() == AgentLocation.LOADING_DECK && da.getCurrentOrder() == 0) {
                 anyAgentAvailable = true;
                 break;
             }
@@ -55,9 +55,10 @@ public class InventoryAgent extends BaseAgent {
                 if (materialsPendingOfOrder > 0) {
                     for (DeliveryAgent agent : deliveryAgents) {
                         if (materialsPendingOfOrder <= 0) break;
-                        if (agent.getLocation() == AgentLocation.LOADING_DECK && agent.getCurrentOrder() == 0) {
+                        if (agent.getStatus().getLocation() == AgentLocation.LOADING_DECK && agent.getCurrentOrder() == 0) {
                             int amountToAssign = Math.min(materialsPendingOfOrder, truckMaxCapacity);
                             stateDescriptor = "Assigning " + amountToAssign + " items to " + agent.getThreadID();
+                            publishStatus();
 
                             try {
                                 Thread.sleep(requestTime);
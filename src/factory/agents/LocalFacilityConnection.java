@@ -0,0 +1,63 @@
+package factory.agents;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import Facility.ClientChannel;
+import Facility.Facility;
+import core.agents.AgentLocation;
+import core.agents.AgentState;
+
+/**
+ * In-process stand-in for a facility server connection. Requests go straight to the Facility
+ * and its callbacks are delivered to the agent exactly as the networked client would: in order,
+ * on a listener thread of their own. The Facility calls back on its timer wheel, which must not
+ * wait on an agent's monitor or its logging.
+ */
+public class LocalFacilityConnection implements FacilityClient, ClientChannel {
+    // Shared by every in-process connection, like a multiplexer's listener; one thread keeps order
+    private static final ExecutorService CALLBACKS = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "LocalFacilityCallbacks");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Facility facility;
+    private final FacilityListener agent;
+
+    public LocalFacilityConnection(Facility facility, FacilityListener agent) {
+        this.facility = facility;
+        this.agent = agent;
+    }
+
+    @Override
+    public void requestBreak() {
+        facility.handleAccessRequest(agent.getThreadID(), this, Facility.NO_REQUEST_ID, agent.getBreakPriority());
+    }
+
+    @Override
+    public void close() {
+        // nothing to tear down
+    }
+
+    @Override
+    public void sendState(String agentId, AgentState state) {
+        if (agentId.equals(agent.getThreadID())) {
+            CALLBACKS.execute(() -> agent.updateStateFromServer(state));
+        }
+    }
+
+    @Override
+    public void sendLocation(String agentId, AgentLocation location) {
+        if (agentId.equals(agent.getThreadID())) {
+            CALLBACKS.execute(() -> agent.updateLocationFromServer(location));
+        }
+    }
+
+    @Override
+    public void sendEvent(String agentId, String eventType) {
+        if (agentId.equals(agent.getThreadID())) {
+            CALLBACKS.execute(() -> agent.handleServerEvent(eventType));
+        }
+    }
+}
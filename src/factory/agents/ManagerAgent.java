@@ -1,7 +1,13 @@
 package factory.agents;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import factory.Factory;
 import factory.production.ProductOrder;
+import factory.production.Workstations;
 
 import Facility.Bathroom;
 import core.agents.AgentLocation;
@@ -12,6 +18,9 @@ public class ManagerAgent extends BaseAgent {
     Factory factory;
     Bathroom bathroom;
     int orderBatchSize = 10;
+    private static final int NO_REQUEST = -1;
+    // Latest operator request, applied by the manager's own thread
+    private final AtomicInteger requestedWorkstations = new AtomicInteger(NO_REQUEST);
 
     public ManagerAgent(Factory factory) {
         super(AgentType.MANAGER, "Manager", AgentLocation.FACTORY);
@@ -19,20 +28,51 @@ public class ManagerAgent extends BaseAgent {
         this.bathroom = new Bathroom();
     }
 
+    // Queue each batch grouped by workstation family, then by product, so a family's stations are
+    // handed runs of the same product. Workers still pull from one shared queue, so this makes a
+    // matching setup likelier rather than certain; WorkstationPool picks the matching station.
     public void planProduction() {
+        List<ProductOrder> batch = new ArrayList<>();
+        for (int i = 1; i < factory.orderBatchSize; i++){
+            batch.add(new ProductOrder(random.nextInt(factory.productsOffered)+1, random.nextInt(9)+1));
+        }
+        Workstations workstations = factory.zones.getWorkstations();
+        batch.sort(Comparator.<ProductOrder>comparingInt(order -> workstations.getFamily(order.product_id))
+                .thenComparingInt(order -> order.product_id));
+        factory.productOrders.addAll(batch);
+    }
+
+    /**
+     * Asks the manager to open or close workstations without restarting the shift. It takes
+     * effect on the manager's next step; if several requests arrive before then, the last wins.
+     */
+    public void requestWorkstationCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Need at least one workstation: " + capacity);
+        }
+        requestedWorkstations.set(capacity);
+    }
 
+    private void applyWorkstationRequest() {
+        int capacity = requestedWorkstations.getAndSet(NO_REQUEST);
+        if (capacity == NO_REQUEST) return;
+        System.out.println(threadID + ": Changing workstation capacity to " + capacity);
+        factory.zones.getWorkstations().setCapacity(capacity);
     }
 
     @Override
     protected void performLocationBehavior() {
+        applyWorkstationRequest();
         if (factory.productOrders.peek() == null){
-            for (int i = 1; i < factory.orderBatchSize; i++){
-                factory.productOrders.add(new ProductOrder(random.nextInt(factory.productsOffered)+1, random.nextInt(9)+1));
-            }
+            planProduction();
         }
     }
 
-    private void hireWorkers() {
+    /**
+     * Creates the inventory agent, workers and trucks without starting them. Factory calls it
+     * before starting the manager, so anyone holding the factory sees the full staff lists.
+     */
+    public void hireWorkers() {
         System.out.println("Hiring");
         factory.inventoryAgent = new InventoryAgent("InventoryAgent", AgentLocation.WAREHOUSE, factory.warehouse, factory.truckMaxCapacity, factory.deliveryAgents, factory.requestTime);
 
@@ -67,7 +107,6 @@ public class ManagerAgent extends BaseAgent {
 
     @Override
     public void run() {
-        hireWorkers();
         startShift();
         System.out.println("All workers started");
 
@@ -1,22 +1,36 @@
 package factory.agents;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import Facility.AdmissionPriority;
 import core.Zones.ZonesAPI;
 import core.agents.AgentLocation;
 import core.agents.AgentState;
 import core.agents.AgentType;
 import core.agents.BaseAgent;
 import factory.production.ProductOrder;
+import factory.production.Workstation;
 import factory.warehouse.Warehouse;
 
-public class WorkerAgent extends BaseAgent {
+public class WorkerAgent extends BaseAgent implements FacilityListener {
+    // Point both at one Facility.FacilityServer port to share a single connection, or list
+    // several host:port endpoints to shard workers across servers
+    private static final String FACILITY_HOST = System.getProperty("facility.host", "localhost");
+    private static final List<String> BATHROOM_ENDPOINTS = endpoints("facility.bathroom", 5002);
+    private static final List<String> BREAKROOM_ENDPOINTS = endpoints("facility.breakroom", 5001);
+    // Shifts without a break after which a worker queues one class higher
+    private static final int OVERDUE_SHIFTS = 8;
 
     private final LinkedList<ProductOrder> productOrders;
     private final Warehouse warehouse;
     private final InventoryAgent inventoryAgent;
 
-    private final BathroomConnection bathroomConnection;
-    private final BreakroomConnection breakroomConnection;
+    private final FacilityClient bathroomConnection;
+    private final FacilityClient breakroomConnection;
     private volatile boolean breakRequestInProgress = false;
     private volatile boolean hasRequestedBreak = false;
 
@@ -29,7 +43,8 @@ public class WorkerAgent extends BaseAgent {
     private int totalMaterialsNeeded = 0;
 
     private AgentLocation targetLocation;
-    private boolean holdingWorkstation;
+    private Workstation workstation;
+    private CompletableFuture<Void> workstationRequest;
     private int productionTime;
     private int requestTime;
 
@@ -42,20 +57,42 @@ public class WorkerAgent extends BaseAgent {
         this.inventoryAgent = inventoryAgent;
         this.zones = zones;
         this.targetLocation = null;
-        this.holdingWorkstation = false;
+        this.workstation = null;
         this.productionTime = productionTime;
         this.requestTime = requestTime;
 
-        this.bathroomConnection = new BathroomConnection("localhost", 5002, this);
-        this.breakroomConnection = new BreakroomConnection("localhost", 5001, this);
+        // In-process facilities registered on the zones skip the TCP servers entirely; servers the
+        // factory started itself are reached on the endpoints it recorded there
+        this.bathroomConnection = zones.getBathroom() != null
+                ? new LocalFacilityConnection(zones.getBathroom(), this)
+                : new BathroomConnection(zones.getBathroomEndpoints() != null ? zones.getBathroomEndpoints() : BATHROOM_ENDPOINTS, this);
+        this.breakroomConnection = zones.getBreakroom() != null
+                ? new LocalFacilityConnection(zones.getBreakroom(), this)
+                : new BreakroomConnection(zones.getBreakroomEndpoints() != null ? zones.getBreakroomEndpoints() : BREAKROOM_ENDPOINTS, this);
+    }
+
+    // <prefix>.endpoints=host:port,host:port wins over <prefix>.port
+    private static List<String> endpoints(String prefix, int defaultPort) {
+        String list = System.getProperty(prefix + ".endpoints");
+        if (list == null || list.trim().isEmpty()) {
+            return Collections.singletonList(FACILITY_HOST + ":" + Integer.getInteger(prefix + ".port", defaultPort));
+        }
+        return Arrays.asList(list.trim().split("\\s*,\\s*"));
     }
 
-    public synchronized void updateStateFromServer(AgentState newState) {
-        this.state = newState;
+    // Facility replies arrive on a listener thread; the change itself is made on ours
+    @Override
+    public void updateStateFromServer(AgentState newState) {
+        postUpdate(() -> this.state = newState);
         // System.out.println("[" + threadID + "] State from server: " + newState);
     }
 
-    public synchronized void updateLocationFromServer(AgentLocation newLocation) {
+    @Override
+    public void updateLocationFromServer(AgentLocation newLocation) {
+        postUpdate(() -> applyLocationFromServer(newLocation));
+    }
+
+    private void applyLocationFromServer(AgentLocation newLocation) {
         System.out.println("[" + threadID + "] Location from server: " + newLocation);
 
         AgentLocation oldLocation = this.location;
@@ -76,10 +113,36 @@ public class WorkerAgent extends BaseAgent {
         }
     }
 
+    @Override
+    protected int getOrderProgress() {
+        return orderProgress;
+    }
+
+    @Override
     public void handleServerEvent(String eventType) {
         System.out.println("[" + threadID + "] Facility event: " + eventType);
     }
 
+    /**
+     * HIGH mid-way through an order, since the order waits for us; NORMAL with an order not yet
+     * started; LOW with nothing to get back to. A long-overdue break moves up one class.
+     */
+    @Override
+    public AdmissionPriority getBreakPriority() {
+        AdmissionPriority priority;
+        if (currentProductOrder == null) {
+            priority = AdmissionPriority.LOW;
+        } else if (orderProgress > 0) {
+            priority = AdmissionPriority.HIGH;
+        } else {
+            priority = AdmissionPriority.NORMAL;
+        }
+        if (shiftsSinceBreak >= OVERDUE_SHIFTS && priority != AdmissionPriority.HIGH) {
+            priority = AdmissionPriority.values()[priority.ordinal() - 1];
+        }
+        return priority;
+    }
+
     @Override
     protected void processNextState() {
         switch (state) {
@@ -87,6 +150,7 @@ public class WorkerAgent extends BaseAgent {
                 if (location == AgentLocation.FACTORY) {
                     if (currentProductOrder == null) {
                         stateDescriptor = "Requesting production order";
+                        publishStatus();
                         try {
                             Thread.sleep(2000);
                         } catch (InterruptedException e) {
@@ -96,6 +160,7 @@ public class WorkerAgent extends BaseAgent {
                         currentProductOrder = productOrders.poll();
                         if (currentProductOrder != null) {
                             materialsRequested = false;
+                            zones.getProductionStats().orderStarted();
                         }
                     }
 
@@ -108,6 +173,7 @@ public class WorkerAgent extends BaseAgent {
                             this.totalMaterialsNeeded = currentProductOrder.quantity;
                             this.materialsCarried = 0;
 
+                            publishStatus();
                             try {
                                 Thread.sleep(2000);
                             } catch (InterruptedException e) {
@@ -117,6 +183,7 @@ public class WorkerAgent extends BaseAgent {
                             System.out.println(threadID + ": Requesting " + totalMaterialsNeeded + " materials.");
                             stateDescriptor = "Requesting " + totalMaterialsNeeded + " raw materials";
 
+                            publishStatus();
                             try {
                                 Thread.sleep(2000);
                             } catch (InterruptedException e) {
@@ -132,6 +199,7 @@ public class WorkerAgent extends BaseAgent {
 
                         else {
                             stateDescriptor = "Resuming previous order";
+                            publishStatus();
                             try {
                                 Thread.sleep(2000);
                             } catch (InterruptedException e) {
@@ -161,20 +229,31 @@ public class WorkerAgent extends BaseAgent {
                         System.out.println(threadID + ": Collected all " + materialsCarried + " items. Returning to Factory.");
                         startMovingTo(AgentLocation.FACTORY);
                     }
+                } else if (location == AgentLocation.FACTORY && workstationRequest != null) {
+                    if (workstationRequest.isDone()) {
+                        state = AgentState.WORKING;
+                    } else if (!breakRequestInProgress && !hasRequestedBreak && shouldTakeBreak()) {
+                        // Give up our place in the workstation queue rather than making the break wait
+                        zones.getWorkstations().abandon(currentProductOrder.product_id, workstationRequest);
+                        workstationRequest = null;
+                        startMovingTo(random.nextBoolean() ? AgentLocation.BREAKROOM : AgentLocation.BATHROOM);
+                    }
                 }
                 break;
 
             case WORKING:
+                shiftsSinceBreak++;
                 if (!breakRequestInProgress && !hasRequestedBreak && shouldTakeBreak()) {
-                    if (holdingWorkstation){
+                    if (workstation != null){
                         stateDescriptor = "Releasing workstation";
+                        publishStatus();
                         try {
                             Thread.sleep(2000);
                         } catch (InterruptedException e) {
                             throw new RuntimeException(e);
                         }
-                        zones.getWorkstations().leave();
-                        holdingWorkstation = false;
+                        zones.getWorkstations().leave(workstation);
+                        workstation = null;
                     }
                     startMovingTo(random.nextBoolean() ? AgentLocation.BREAKROOM : AgentLocation.BATHROOM);
                     return;
@@ -190,6 +269,13 @@ public class WorkerAgent extends BaseAgent {
         }
     }
 
+    // Runs on this thread; a grant for a request we abandoned or already claimed wakes nothing
+    private void wakeIfStillWaitingFor(CompletableFuture<Void> request) {
+        if (state == AgentState.WAITING && workstationRequest == request) {
+            wake();
+        }
+    }
+
     @Override
     protected void performLocationBehavior() {
         switch (state) {
@@ -221,6 +307,9 @@ public class WorkerAgent extends BaseAgent {
                         stateDescriptor = "Waiting for materials " + materialsCarried + "/" + totalMaterialsNeeded;
                         sleepTime = 1000;
                     }
+                } else if (workstationRequest != null) {
+                    stateDescriptor = "Queued for workstation (product " + currentProductOrder.product_id + ")";
+                    sleepTime = 500;
                 } else {
                     sleepTime = 500;
                 }
@@ -228,12 +317,38 @@ public class WorkerAgent extends BaseAgent {
 
             case WORKING:
                 if (currentProductOrder != null) {
-                    if (!holdingWorkstation) {
-                        state = AgentState.WAITING;
-                        stateDescriptor = "Waiting for workstation";
-                        zones.getWorkstations().enter();
+                    if (workstation == null) {
+                        int productId = currentProductOrder.product_id;
+                        if (workstationRequest == null) {
+                            workstationRequest = zones.getWorkstations().enterAsync(productId);
+                        }
+                        if (!workstationRequest.isDone()) {
+                            // Stay responsive while queued; the grant cuts the wait short
+                            CompletableFuture<Void> request = workstationRequest;
+                            request.thenRun(() -> postUpdate(() -> wakeIfStillWaitingFor(request)));
+                            state = AgentState.WAITING;
+                            stateDescriptor = "Queued for workstation (product " + productId + ")";
+                            sleepTime = 500;
+                            break;
+                        }
+                        workstationRequest = null;
+                        workstation = zones.getWorkstations().claim(productId);
+                        if (workstation == null) {
+                            // The slot was handed back; queue again on the next step
+                            stateDescriptor = "No free workstation, queueing again (product " + productId + ")";
+                            sleepTime = 500;
+                            break;
+                        }
+                        if (workstation.needsChangeover(productId)) {
+                            stateDescriptor = "Changing over station " + workstation.getId() + " to product " + productId;
+                        }
+                        publishStatus();
+                        try {
+                            zones.getWorkstations().changeOver(workstation, productId);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
                         state = AgentState.WORKING;
-                        holdingWorkstation = true;
                     }
                     if (orderProgress < currentProductOrder.quantity) {
                         orderProgress++;
@@ -280,7 +395,7 @@ public class WorkerAgent extends BaseAgent {
                 if (!hasRequestedBreak) {
                     hasRequestedBreak = true;
                     breakRequestInProgress = true;
-                    System.out.println("[" + threadID + "] Requesting breakroom break through server...");
+                    System.out.println("[" + threadID + "] Requesting breakroom break...");
                     breakroomConnection.requestBreak();
                 }
                 break;
@@ -288,7 +403,7 @@ public class WorkerAgent extends BaseAgent {
                 if (!hasRequestedBreak) {
                     hasRequestedBreak = true;
                     breakRequestInProgress = true;
-                    System.out.println("[" + threadID + "] Requesting bathroom break through server...");
+                    System.out.println("[" + threadID + "] Requesting bathroom break...");
                     bathroomConnection.requestBreak();
                 }
                 break;
@@ -298,12 +413,13 @@ public class WorkerAgent extends BaseAgent {
     private void completeOrder() {
         System.out.println(threadID + ": Order Complete!");
 
-        if (holdingWorkstation) {
-            zones.getWorkstations().leave();
-            holdingWorkstation = false;
+        if (workstation != null) {
+            zones.getWorkstations().leave(workstation);
+            workstation = null;
         }
 
         warehouse.AddMaterials(currentProductOrder.getTargetProductIndex(), currentProductOrder.quantity);
+        zones.getProductionStats().orderCompleted(currentProductOrder);
 
         currentProductOrder = null;
         orderProgress = 0;
@@ -315,8 +431,8 @@ public class WorkerAgent extends BaseAgent {
         state = AgentState.IDLE;
     }
 
+    // Only reads the count: a shift is a WORKING step, not a poll of the workstation queue
     private boolean shouldTakeBreak() {
-        shiftsSinceBreak++;
         if (shiftsSinceBreak <= 3) return false;
         return random.nextInt(100) < (shiftsSinceBreak * 10);
     }
@@ -0,0 +1,41 @@
+package factory.production;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of production orders, bumped by the workers. An order is in progress from the
+ * moment a worker takes it off the queue until it is complete; breaks do not end it.
+ */
+public class ProductionStats {
+    private final LongAdder ordersStarted = new LongAdder();
+    private final LongAdder ordersCompleted = new LongAdder();
+    private final LongAdder unitsCompleted = new LongAdder();
+
+    public void orderStarted() {
+        ordersStarted.increment();
+    }
+
+    public void orderCompleted(ProductOrder order) {
+        ordersCompleted.increment();
+        unitsCompleted.add(order.quantity);
+    }
+
+    public long getOrdersStarted() {
+        return ordersStarted.sum();
+    }
+
+    public long getOrdersCompleted() {
+        return ordersCompleted.sum();
+    }
+
+    public long getUnitsCompleted() {
+        return unitsCompleted.sum();
+    }
+
+    /** Orders taken by a worker and not yet complete. */
+    public long getWorkInProgress() {
+        // Completed first, so a completion between the two reads cannot make this negative
+        long completed = ordersCompleted.sum();
+        return Math.max(0, ordersStarted.sum() - completed);
+    }
+}
@@ -0,0 +1,89 @@
+package factory.production;
+
+public class Workstation {
+    public static final int NO_PRODUCT = -1;
+
+    private final int id;
+    private final WorkstationPool pool;
+
+    private int currentProduct;
+    private boolean busy;
+    private long busySince;
+    private long lastReleased;
+
+    private long busyNanos;
+    private long ordersServed;
+    private long changeovers;
+    private long changeoverMillis;
+
+    public Workstation(int id, WorkstationPool pool) {
+        this.id = id;
+        this.pool = pool;
+        this.currentProduct = NO_PRODUCT;
+        this.busy = false;
+        this.lastReleased = 0;
+    }
+
+    void occupy(long now) {
+        busy = true;
+        busySince = now;
+        ordersServed++;
+    }
+
+    void free(long now) {
+        busy = false;
+        busyNanos += now - busySince;
+        lastReleased = now;
+    }
+
+    void recordChangeover(int productId, long millis) {
+        currentProduct = productId;
+        changeovers++;
+        changeoverMillis += millis;
+    }
+
+    void setUp(int productId) {
+        currentProduct = productId;
+    }
+
+    /** A station needs a changeover only when it is switched away from another product. */
+    public boolean needsChangeover(int productId) {
+        return currentProduct != NO_PRODUCT && currentProduct != productId;
+    }
+
+    public long getBusyNanos() {
+        return busy ? busyNanos + (System.nanoTime() - busySince) : busyNanos;
+    }
+
+    long getLastReleased() {
+        return lastReleased;
+    }
+
+    public boolean isBusy() {
+        return busy;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public WorkstationPool getPool() {
+        return pool;
+    }
+
+    public int getCurrentProduct() {
+        return currentProduct;
+    }
+
+    public long getOrdersServed() {
+        return ordersServed;
+    }
+
+    public long getChangeovers() {
+        return changeovers;
+    }
+
+    public long getChangeoverMillis() {
+        return changeoverMillis;
+    }
+}
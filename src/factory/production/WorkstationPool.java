@@ -0,0 +1,220 @@
+package factory.production;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import core.Zones.BufferZone;
+
+/**
+ * Stations dedicated to one product family. The admission queue in BufferZone gates how many
+ * workers hold a station; once admitted, a worker is handed the free station that avoids a
+ * changeover whenever possible.
+ */
+public class WorkstationPool extends BufferZone {
+    private final int family;
+    private final List<Integer> products;
+    private final List<Workstation> stations;
+    private final List<Workstation> retired;
+    private final ReentrantLock lock;
+
+    public WorkstationPool(int family, int firstStationId, int nStations) {
+        super(nStations, "Workstations-" + family);
+        this.family = family;
+        this.products = new ArrayList<>();
+        this.stations = new ArrayList<>(nStations);
+        this.retired = new ArrayList<>();
+        this.lock = new ReentrantLock();
+
+        for (int i = 0; i < nStations; i++) {
+            stations.add(new Workstation(firstStationId + i, this));
+        }
+    }
+
+    void addProduct(int productId) {
+        products.add(productId);
+    }
+
+    /** Waits for a station; returns null if interrupted while queued. */
+    public Workstation acquire(int productId) {
+        return enter() ? claim(productId) : null;
+    }
+
+    /** Like acquire, but returns null if no station frees up within the timeout. */
+    public Workstation tryAcquire(int productId, long timeout, TimeUnit unit) {
+        return tryEnter(timeout, unit) ? claim(productId) : null;
+    }
+
+    /**
+     * Picks a station for a caller that already holds a slot (e.g. after enterAsync completes).
+     * Should no station be free the slot is given back and null returned, so the caller holds
+     * nothing and can queue again.
+     */
+    public Workstation claim(int productId) {
+        Workstation station;
+        try {
+            lock.lock();
+            station = selectStation(productId);
+            if (station != null) {
+                station.occupy(System.nanoTime());
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (station == null) {
+            leave();
+        }
+        return station;
+    }
+
+    public void release(Workstation station) {
+        try {
+            lock.lock();
+            station.free(System.nanoTime());
+            // Pending shrink: retire the station its holder just left
+            if (stations.size() > getCapacity()) {
+                stations.remove(station);
+                retired.add(station);
+                System.out.println("Station " + station.getId() + " retired from " + getZoneName());
+            }
+        } finally {
+            lock.unlock();
+        }
+        leave();
+    }
+
+    /**
+     * Changes the number of stations. New stations are opened before the zone grows, so every
+     * admitted worker finds one. When shrinking, free stations close now and busy ones close as
+     * their holders release them. Returns the next unused station id.
+     */
+    int resize(int nStations, int firstNewStationId) {
+        int nextId = firstNewStationId;
+        try {
+            lock.lock();
+            while (stations.size() < nStations) {
+                stations.add(new Workstation(nextId++, this));
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        setCapacity(nStations);
+
+        try {
+            lock.lock();
+            // Slots granted but not yet claimed still need a free station
+            int needed = Math.max(nStations, getOccupiedSlots());
+            for (int i = stations.size() - 1; i >= 0 && stations.size() > needed; i--) {
+                Workstation station = stations.get(i);
+                if (!station.isBusy()) {
+                    stations.remove(i);
+                    retired.add(station);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return nextId;
+    }
+
+    public int getStationCount() {
+        try {
+            lock.lock();
+            return stations.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void recordChangeover(Workstation station, int productId, long millis) {
+        try {
+            lock.lock();
+            station.recordChangeover(productId, millis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void recordSetUp(Workstation station, int productId) {
+        try {
+            lock.lock();
+            station.setUp(productId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Same product first, then a station never set up, then the one idle the longest.
+    private Workstation selectStation(int productId) {
+        Workstation fresh = null;
+        Workstation oldest = null;
+
+        for (Workstation station : stations) {
+            if (station.isBusy()) continue;
+
+            if (station.getCurrentProduct() == productId) {
+                return station;
+            }
+            if (station.getCurrentProduct() == Workstation.NO_PRODUCT) {
+                if (fresh == null) fresh = station;
+            } else if (oldest == null || station.getLastReleased() < oldest.getLastReleased()) {
+                oldest = station;
+            }
+        }
+        return fresh != null ? fresh : oldest;
+    }
+
+    public double getUtilization() {
+        return getMetrics().getUtilization();
+    }
+
+    public long getChangeovers() {
+        try {
+            lock.lock();
+            long total = 0;
+            for (Workstation station : stations) total += station.getChangeovers();
+            for (Workstation station : retired) total += station.getChangeovers();
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getChangeoverMillis() {
+        try {
+            lock.lock();
+            long total = 0;
+            for (Workstation station : stations) total += station.getChangeoverMillis();
+            for (Workstation station : retired) total += station.getChangeoverMillis();
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getOrdersServed() {
+        try {
+            lock.lock();
+            long total = 0;
+            for (Workstation station : stations) total += station.getOrdersServed();
+            for (Workstation station : retired) total += station.getOrdersServed();
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getFamily() {
+        return family;
+    }
+
+    public List<Integer> getProducts() {
+        return products;
+    }
+
+    public List<Workstation> getStations() {
+        return stations;
+    }
+}
@@ -1,10 +1,182 @@
 package factory.production;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
-import core.Zones.BufferZone;
+import core.Zones.ZoneMetrics;
 
-public class Workstations extends BufferZone {
-    public Workstations(int capacity) {
-        super(capacity, "Workstations");
+/**
+ * Workstation pools keyed by product. Products are split into families, each with its own pool,
+ * so a station only ever switches between the products of its family. A pool's stations serve
+ * only its family: a worker waits for its own pool even while another family's stations sit idle.
+ * To keep that from starving a family, a family gets its own pool only when every pool can have
+ * at least MIN_STATIONS_PER_POOL stations; below that all products share one pool, which is the
+ * case with the default 2 stations.
+ */
+public class Workstations {
+    private static final int MIN_STATIONS_PER_POOL = 2;
+
+    private final List<WorkstationPool> pools;
+    private final Map<Integer, WorkstationPool> poolsByProduct;
+    private final int changeoverTime;
+    private int capacity;
+    private int nextStationId;
+
+    public Workstations(int capacity, int productsOffered, int changeoverTime) {
+        this.pools = new ArrayList<>();
+        this.poolsByProduct = new HashMap<>();
+        this.changeoverTime = changeoverTime;
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Need at least one workstation: " + capacity);
+        }
+
+        int nPools = Math.max(1, Math.min(capacity / MIN_STATIONS_PER_POOL, productsOffered));
+        this.capacity = capacity;
+        for (int family = 0; family < nPools; family++) {
+            int nStations = stationsForPool(family, capacity, nPools);
+            pools.add(new WorkstationPool(family, nextStationId, nStations));
+            nextStationId += nStations;
+        }
+
+        // Products are numbered from 1 (see ManagerAgent)
+        for (int product = 1; product <= productsOffered; product++) {
+            WorkstationPool pool = pools.get((product - 1) % nPools);
+            pool.addProduct(product);
+            poolsByProduct.put(product, pool);
+        }
+    }
+
+    private static int stationsForPool(int family, int total, int nPools) {
+        return total / nPools + (family < total % nPools ? 1 : 0);
+    }
+
+    /**
+     * Changes the total number of stations while the simulation runs, spreading them over the
+     * existing pools. Every pool keeps at least one station, so a total below the number of pools
+     * is raised to it. Queued workers are admitted as soon as their pool grows; a shrink closes
+     * busy stations as their holders leave them.
+     */
+    public synchronized void setCapacity(int newCapacity) {
+        if (newCapacity < 1) {
+            throw new IllegalArgumentException("Need at least one workstation: " + newCapacity);
+        }
+        capacity = Math.max(pools.size(), newCapacity);
+        for (WorkstationPool pool : pools) {
+            nextStationId = pool.resize(stationsForPool(pool.getFamily(), capacity, pools.size()), nextStationId);
+        }
+        System.out.println("Workstation capacity set to " + capacity);
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public WorkstationPool getPool(int productId) {
+        WorkstationPool pool = poolsByProduct.get(productId);
+        return pool != null ? pool : pools.get(Math.floorMod(productId - 1, pools.size()));
+    }
+
+    /** Family of the pool a product is made in; products of one family share stations. */
+    public int getFamily(int productId) {
+        return getPool(productId).getFamily();
+    }
+
+    /** Waits for a station; returns null if interrupted while queued. */
+    public Workstation enter(int productId) {
+        return getPool(productId).acquire(productId);
+    }
+
+    public Workstation tryEnter(int productId, long timeout, TimeUnit unit) {
+        return getPool(productId).tryAcquire(productId, timeout, unit);
+    }
+
+    /**
+     * Queues for a station of the product's pool without blocking. Once the future is done the
+     * caller holds a slot and gets its station from {@link #claim}; {@link #abandon} gives up.
+     */
+    public CompletableFuture<Void> enterAsync(int productId) {
+        return getPool(productId).enterAsync();
+    }
+
+    /** See {@link WorkstationPool#claim}: null, holding nothing, if no station was free. */
+    public Workstation claim(int productId) {
+        return getPool(productId).claim(productId);
+    }
+
+    public void abandon(int productId, CompletableFuture<Void> request) {
+        getPool(productId).abandon(request);
+    }
+
+    /**
+     * Sets the station up for productId, sleeping for the changeover time if it was last used
+     * for a different product. Must be called by the thread holding the station.
+     */
+    public void changeOver(Workstation station, int productId) throws InterruptedException {
+        if (!station.needsChangeover(productId)) {
+            station.getPool().recordSetUp(station, productId);
+            return;
+        }
+
+        System.out.println(Thread.currentThread().getName() + " changing over station " + station.getId() + " from product " + station.getCurrentProduct() + " to " + productId);
+        Thread.sleep(changeoverTime);
+        station.getPool().recordChangeover(station, productId, changeoverTime);
+    }
+
+    public void leave(Workstation station) {
+        station.getPool().release(station);
+    }
+
+    public int getChangeoverTime() {
+        return changeoverTime;
+    }
+
+    public List<WorkstationPool> getPools() {
+        return pools;
+    }
+
+    /** Share of all stations held right now, 0 to 1. */
+    public double getCurrentUtilization() {
+        int occupied = 0;
+        int totalCapacity = 0;
+        for (WorkstationPool pool : pools) {
+            occupied += pool.getOccupiedSlots();
+            totalCapacity += pool.getCapacity();
+        }
+        return totalCapacity > 0 ? (double) occupied / totalCapacity : 0.0;
+    }
+
+    public long getTotalChangeovers() {
+        long total = 0;
+        for (WorkstationPool pool : pools) total += pool.getChangeovers();
+        return total;
+    }
+
+    public long getTotalChangeoverMillis() {
+        long total = 0;
+        for (WorkstationPool pool : pools) total += pool.getChangeoverMillis();
+        return total;
+    }
+
+    public List<ZoneMetrics.Snapshot> getZoneMetrics() {
+        List<ZoneMetrics.Snapshot> snapshots = new ArrayList<>(pools.size());
+        for (WorkstationPool pool : pools) snapshots.add(pool.getMetrics().snapshot());
+        return snapshots;
+    }
+
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        for (WorkstationPool pool : pools) {
+            sb.append(String.format(" Pool %d %s: %d stations, %5.1f%% busy, %d orders, %d changeovers (%d ms)%n",
+                    pool.getFamily(), pool.getProducts(), pool.getStationCount(),
+                    pool.getUtilization() * 100.0, pool.getOrdersServed(),
+                    pool.getChangeovers(), pool.getChangeoverMillis()));
+            sb.append("   ").append(pool.getMetrics().snapshot()).append(System.lineSeparator());
+        }
+        sb.append(String.format(" Changeover overhead: %d changeovers, %d ms%n", getTotalChangeovers(), getTotalChangeoverMillis()));
+        return sb.toString();
     }
 }